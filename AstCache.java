@@ -0,0 +1,455 @@
+package plc.project;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * An on-disk cache of parsed sources, so unchanged files (like the standard
+ * library) don't have to be lexed and parsed again on every start.
+ *
+ * Like the {@link TokenCache}, entries are keyed by the SHA-256 hash of the
+ * source, so an edited source simply misses. On a hit the entry is read whole
+ * and decoded straight into an {@link Ast.Source}, without lexing or parsing.
+ * Unlike the token cache it isn't memory mapped, since decoding from a heap
+ * buffer is several times faster than from a mapped one, which costs more
+ * than the copy for entries of this size.
+ *
+ * An entry is a header ({@link #MAGIC} and {@link #VERSION}) followed by a
+ * pool of constants and then the nodes of the {@link FlatAst} of the source,
+ * all as unsigned varints. Each constant is a tag (see {@link #NIL} and
+ * following) and its value: the length and chars of a string, the char of a
+ * character, or the length and two's complement bytes of an integer, which for
+ * a decimal are its unscaled value after its (zigzag encoded) scale. Each node
+ * is its {@link FlatAst.Kind} and its contents in the order of {@link
+ * FlatAst}, where a constant is its number in the pool, a child is how many
+ * nodes before this one it is, and a list is its size and then its items.
+ * An optional constant is one more than its number and an optional child is
+ * as usual, so either is 0 if absent. Children come
+ * before their parents, so the nodes are decoded in a single pass and the
+ * last one is the source. Entries with the wrong header or which are
+ * truncated or otherwise invalid are treated as a miss and rewritten.
+ */
+public final class AstCache {
+
+    private static final int MAGIC = 0x504C4341; // "PLCA"
+    private static final int VERSION = 1;
+    private static final int NIL = 0, TRUE = 1, FALSE = 2, STRING = 3, CHARACTER = 4, INTEGER = 5, DECIMAL = 6;
+    private static final FlatAst.Kind[] KINDS = FlatAst.Kind.values();
+
+    private final CacheDirectory directory;
+
+    /**
+     * Creates a cache storing entries in the given directory, which is
+     * created if needed.
+     */
+    public AstCache(Path directory) throws IOException {
+        this.directory = new CacheDirectory(directory, ".ast");
+    }
+
+    /**
+     * Returns the AST of the source, from the cache if it has been parsed
+     * before and otherwise by lexing and parsing it and adding it to the
+     * cache. Throws a {@link ParseException} (and caches nothing) if the
+     * source doesn't lex or parse.
+     */
+    public Ast.Source parse(CharSequence source) throws IOException {
+        Path entry = directory.entry(source);
+        Ast.Source ast = read(entry);
+        if (ast != null) {
+            directory.hit();
+            return ast;
+        }
+        directory.miss();
+        ast = new Parser(new Lexer(source).lexBuffer()).parseSource();
+        directory.write(entry, encode(ast));
+        return ast;
+    }
+
+    /**
+     * Removes the entry for the source, if there is one.
+     */
+    public void invalidate(CharSequence source) throws IOException {
+        directory.invalidate(source);
+    }
+
+    /**
+     * Removes every entry from the cache.
+     */
+    public void clear() throws IOException {
+        directory.clear();
+    }
+
+    public long getHits() {
+        return directory.getHits();
+    }
+
+    public long getMisses() {
+        return directory.getMisses();
+    }
+
+    /**
+     * Returns the fraction of calls to {@link #parse(CharSequence)} served
+     * from the cache, or 0 if there have been none.
+     */
+    public double getHitRate() {
+        return directory.getHitRate();
+    }
+
+    private static Ast.Source read(Path entry) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(entry);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            return decode(bytes);
+        } catch (BufferUnderflowException | IllegalArgumentException | ClassCastException e) {
+            return null; // a truncated or corrupt entry, which is rewritten
+        }
+    }
+
+    /**
+     * Returns the serialized form of the AST.
+     */
+    static byte[] encode(Ast.Source source) {
+        FlatAst flat = FlatAst.of(source);
+        CacheDirectory.Output output = new CacheDirectory.Output();
+        output.varint(MAGIC);
+        output.varint(VERSION);
+        output.varint(flat.constants());
+        for (int i = 0; i < flat.constants(); i++) {
+            constant(output, flat.constant(i));
+        }
+        output.varint(flat.size());
+        for (int node = 0; node < flat.size(); node++) {
+            output.varint(flat.kind(node).ordinal());
+            switch (flat.kind(node)) {
+                case SOURCE:
+                    nodes(output, flat, node, flat.first(node));
+                    nodes(output, flat, node, flat.second(node));
+                    break;
+                case FIELD:
+                    output.varint(flat.first(node));
+                    output.varint(flat.second(node));
+                    output.varint(child(node, flat.third(node)));
+                    break;
+                case METHOD: {
+                    output.varint(flat.first(node));
+                    int signature = flat.second(node);
+                    int count = flat.size(signature);
+                    output.varint(count);
+                    for (int i = 0; i < 2 * count; i++) {
+                        output.varint(flat.item(signature, i));
+                    }
+                    output.varint(flat.item(signature, 2 * count) + 1);
+                    nodes(output, flat, node, flat.third(node));
+                    break;
+                }
+                case DECLARATION:
+                    output.varint(flat.first(node));
+                    output.varint(flat.second(node) + 1);
+                    output.varint(child(node, flat.third(node)));
+                    break;
+                case EXPRESSION:
+                case RETURN:
+                case GROUP:
+                    output.varint(child(node, flat.first(node)));
+                    break;
+                case ASSIGNMENT:
+                    output.varint(child(node, flat.first(node)));
+                    output.varint(child(node, flat.second(node)));
+                    break;
+                case IF:
+                    output.varint(child(node, flat.first(node)));
+                    nodes(output, flat, node, flat.second(node));
+                    nodes(output, flat, node, flat.third(node));
+                    break;
+                case FOR:
+                    output.varint(flat.first(node));
+                    output.varint(child(node, flat.second(node)));
+                    nodes(output, flat, node, flat.third(node));
+                    break;
+                case WHILE:
+                    output.varint(child(node, flat.first(node)));
+                    nodes(output, flat, node, flat.second(node));
+                    break;
+                case LITERAL:
+                    output.varint(flat.first(node));
+                    break;
+                case BINARY:
+                    output.varint(flat.first(node));
+                    output.varint(child(node, flat.second(node)));
+                    output.varint(child(node, flat.third(node)));
+                    break;
+                case ACCESS:
+                    output.varint(flat.first(node));
+                    output.varint(child(node, flat.second(node)));
+                    break;
+                case FUNCTION:
+                    output.varint(flat.first(node));
+                    output.varint(child(node, flat.second(node)));
+                    nodes(output, flat, node, flat.third(node));
+                    break;
+                default:
+                    throw new AssertionError(flat.kind(node));
+            }
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Returns a child as how many nodes before the parent it is, or 0 if it
+     * is absent.
+     */
+    private static int child(int parent, int child) {
+        return child < 0 ? 0 : parent - child;
+    }
+
+    private static void nodes(CacheDirectory.Output output, FlatAst flat, int parent, int list) {
+        output.varint(flat.size(list));
+        for (int i = 0; i < flat.size(list); i++) {
+            output.varint(parent - flat.item(list, i));
+        }
+    }
+
+    private static void constant(CacheDirectory.Output output, Object value) {
+        if (value == null) {
+            output.varint(NIL);
+        } else if (value instanceof Boolean) {
+            output.varint((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof String) {
+            String string = (String) value;
+            output.varint(STRING);
+            output.varint(string.length());
+            for (int i = 0; i < string.length(); i++) {
+                output.varint(string.charAt(i));
+            }
+        } else if (value instanceof Character) {
+            output.varint(CHARACTER);
+            output.varint((Character) value);
+        } else if (value instanceof BigInteger) {
+            output.varint(INTEGER);
+            output.bytes(((BigInteger) value).toByteArray());
+        } else if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            output.varint(DECIMAL);
+            output.varint((decimal.scale() << 1) ^ (decimal.scale() >> 31));
+            output.bytes(decimal.unscaledValue().toByteArray());
+        } else {
+            throw new AssertionError(value.getClass());
+        }
+    }
+
+    /**
+     * Returns the AST serialized in the bytes, throwing an {@link
+     * IllegalArgumentException} (or another runtime exception for truncated
+     * bytes or an invalid reference) if they are not a valid entry.
+     */
+    static Ast.Source decode(byte[] bytes) {
+        return new Input(ByteBuffer.wrap(bytes)).source();
+    }
+
+    /**
+     * Decodes an entry from a buffer. Reading past its end throws a {@link
+     * BufferUnderflowException}.
+     */
+    private static final class Input {
+
+        private final ByteBuffer buffer;
+        private Object[] constants;
+        private Ast[] nodes;
+        private int node;
+
+        private Input(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private Ast.Source source() {
+            if (varint() != MAGIC || varint() != VERSION) {
+                throw new IllegalArgumentException("Not an AST cache entry.");
+            }
+            constants = new Object[count()];
+            for (int i = 0; i < constants.length; i++) {
+                constants[i] = constant();
+            }
+            nodes = new Ast[count()];
+            for (node = 0; node < nodes.length; node++) {
+                nodes[node] = node();
+            }
+            if (nodes.length == 0 || !(nodes[nodes.length - 1] instanceof Ast.Source)) {
+                throw new IllegalArgumentException("Missing source.");
+            }
+            return (Ast.Source) nodes[nodes.length - 1];
+        }
+
+        private Ast node() {
+            int kind = varint();
+            if (kind < 0 || kind >= KINDS.length) {
+                throw new IllegalArgumentException("Invalid node " + node + ".");
+            }
+            switch (KINDS[kind]) {
+                case SOURCE:
+                    return new Ast.Source(list(Ast.Field.class), list(Ast.Method.class));
+                case FIELD:
+                    return new Ast.Field(name(), name(), optional());
+                case METHOD:
+                    return method();
+                case EXPRESSION:
+                    return new Ast.Stmt.Expression(expr());
+                case DECLARATION:
+                    return new Ast.Stmt.Declaration(name(), optionalName(), optional());
+                case ASSIGNMENT:
+                    return new Ast.Stmt.Assignment(expr(), expr());
+                case IF:
+                    return new Ast.Stmt.If(expr(), list(Ast.Stmt.class), list(Ast.Stmt.class));
+                case FOR:
+                    return new Ast.Stmt.For(name(), expr(), list(Ast.Stmt.class));
+                case WHILE:
+                    return new Ast.Stmt.While(expr(), list(Ast.Stmt.class));
+                case RETURN:
+                    return new Ast.Stmt.Return(expr());
+                case LITERAL:
+                    return new Ast.Expr.Literal(constant(varint()));
+                case GROUP:
+                    return new Ast.Expr.Group(expr());
+                case BINARY:
+                    return new Ast.Expr.Binary(name(), expr(), expr());
+                case ACCESS: {
+                    String name = name();
+                    return new Ast.Expr.Access(optional(), name);
+                }
+                case FUNCTION: {
+                    String name = name();
+                    Optional<Ast.Expr> receiver = optional();
+                    return new Ast.Expr.Function(receiver, name, list(Ast.Expr.class));
+                }
+                default:
+                    throw new AssertionError(KINDS[kind]);
+            }
+        }
+
+        private Ast.Method method() {
+            String name = name();
+            int count = count();
+            List<String> parameters = new ArrayList<>(count);
+            List<String> parameterTypeNames = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                parameters.add(name());
+                parameterTypeNames.add(name());
+            }
+            return new Ast.Method(name, parameters, parameterTypeNames, optionalName(), list(Ast.Stmt.class));
+        }
+
+        private String name() {
+            return name(varint());
+        }
+
+        private Optional<String> optionalName() {
+            int constant = varint();
+            return constant == 0 ? Optional.empty() : Optional.of(name(constant - 1));
+        }
+
+        private String name(int constant) {
+            Object name = constant(constant);
+            if (!(name instanceof String)) {
+                throw new IllegalArgumentException("Invalid name in node " + node + ".");
+            }
+            return (String) name;
+        }
+
+        private Object constant(int constant) {
+            if (constant < 0 || constant >= constants.length) {
+                throw new IllegalArgumentException("Invalid constant in node " + node + ".");
+            }
+            return constants[constant];
+        }
+
+        /**
+         * Returns the earlier node the next varint refers to.
+         */
+        private Ast child() {
+            int offset = varint();
+            if (offset <= 0 || offset > node) {
+                throw new IllegalArgumentException("Invalid child of node " + node + ".");
+            }
+            return nodes[node - offset];
+        }
+
+        private Ast.Expr expr() {
+            return (Ast.Expr) child();
+        }
+
+        private Optional<Ast.Expr> optional() {
+            int offset = varint();
+            if (offset == 0) {
+                return Optional.empty();
+            } else if (offset < 0 || offset > node) {
+                throw new IllegalArgumentException("Invalid child of node " + node + ".");
+            }
+            return Optional.of((Ast.Expr) nodes[node - offset]);
+        }
+
+        private <T extends Ast> List<T> list(Class<T> type) {
+            int size = count();
+            List<T> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(type.cast(child()));
+            }
+            return list;
+        }
+
+        private Object constant() {
+            switch (varint()) {
+                case NIL:
+                    return null;
+                case TRUE:
+                    return true;
+                case FALSE:
+                    return false;
+                case STRING: {
+                    char[] chars = new char[count()];
+                    for (int i = 0; i < chars.length; i++) {
+                        chars[i] = (char) varint();
+                    }
+                    return new String(chars);
+                }
+                case CHARACTER:
+                    return (char) varint();
+                case INTEGER:
+                    return integer();
+                case DECIMAL: {
+                    int scale = varint();
+                    return new BigDecimal(integer(), (scale >>> 1) ^ -(scale & 1));
+                }
+                default:
+                    throw new IllegalArgumentException("Invalid constant.");
+            }
+        }
+
+        private BigInteger integer() {
+            byte[] bytes = new byte[count()];
+            buffer.get(bytes);
+            return new BigInteger(bytes);
+        }
+
+        private int count() {
+            return CacheDirectory.count(buffer);
+        }
+
+        private int varint() {
+            return CacheDirectory.varint(buffer);
+        }
+
+    }
+
+}
@@ -0,0 +1,138 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Checks that an {@link AstCache} gives back the AST it stored, and treats
+ * anything else as a miss.
+ */
+final class AstCacheTests {
+
+    /**
+     * Checks that an {@link AstCache} gives back an equal AST on a hit, keeps
+     * the scale of decimals and the size of integers, and treats a corrupt
+     * entry as a miss.
+     */
+    @Test
+    void testAstCache() throws IOException {
+        String source = ParserFixtures.EVERY_NODE;
+        Ast.Source expected = ParserFixtures.parse(source);
+        Path directory = Files.createTempDirectory("ast");
+        try {
+            AstCache cache = new AstCache(directory);
+            Assertions.assertEquals(expected, cache.parse(source));
+            Assertions.assertEquals(expected, cache.parse(source));
+            Assertions.assertEquals(1L, cache.getHits());
+            Assertions.assertEquals(1L, cache.getMisses());
+            Ast.Expr.Literal rate = (Ast.Expr.Literal) cache.parse(source).getFields().get(1).getValue().get();
+            Assertions.assertEquals(2, ((BigDecimal) rate.getLiteral()).scale());
+            Path entry;
+            try (Stream<Path> entries = Files.list(directory)) {
+                entry = entries.findFirst().get();
+            }
+            byte[] bytes = Files.readAllBytes(entry);
+            Files.write(entry, Arrays.copyOf(bytes, bytes.length / 2));
+            Assertions.assertEquals(expected, cache.parse(source));
+            Assertions.assertEquals(2L, cache.getMisses());
+            Assertions.assertArrayEquals(bytes, Files.readAllBytes(entry));
+            Assertions.assertThrows(ParseException.class, () -> cache.parse("LET x = ;"));
+            cache.invalidate(source);
+            Assertions.assertFalse(Files.exists(entry));
+            cache.clear();
+        } finally {
+            Files.delete(directory);
+        }
+        Ast.Source literals = new Ast.Source(Arrays.asList(
+                new Ast.Field("a", "Decimal", Optional.of(new Ast.Expr.Literal(new BigDecimal(BigInteger.TEN, -3)))),
+                new Ast.Field("b", "Integer", Optional.of(new Ast.Expr.Literal(BigInteger.valueOf(-1).shiftLeft(200)))),
+                new Ast.Field("c", "Character", Optional.of(new Ast.Expr.Literal('\uffff')))), Arrays.asList());
+        Assertions.assertEquals(literals, AstCache.decode(AstCache.encode(literals)));
+        String large = LexerBenchmark.source(64 * 1024);
+        Ast.Source parsed = ParserFixtures.parse(large);
+        Assertions.assertEquals(parsed, AstCache.decode(AstCache.encode(parsed)));
+    }
+
+    /**
+     * Checks that an entry with any one bit flipped, or any varint replaced
+     * by a negative one, is a miss or decodes to some AST, and never fails
+     * with an exception the cache doesn't expect.
+     */
+    @Test
+    void testCorruptEntries() throws IOException {
+        String source = ParserFixtures.EVERY_NODE;
+        Path directory = Files.createTempDirectory("ast");
+        try {
+            AstCache cache = new AstCache(directory);
+            cache.parse(source);
+            Path entry;
+            try (Stream<Path> entries = Files.list(directory)) {
+                entry = entries.findFirst().get();
+            }
+            byte[] bytes = Files.readAllBytes(entry);
+            for (int i = 0; i < bytes.length; i++) {
+                for (int bit = 0; bit < 8; bit++) {
+                    byte[] corrupt = bytes.clone();
+                    corrupt[i] ^= 1 << bit;
+                    Files.write(entry, corrupt);
+                    Assertions.assertNotNull(cache.parse(source));
+                }
+                byte[] corrupt = Arrays.copyOf(bytes, Math.max(bytes.length, i + 5));
+                System.arraycopy(new byte[] {-1, -1, -1, -1, 0x0F}, 0, corrupt, i, 5); // -1
+                Files.write(entry, corrupt);
+                Assertions.assertNotNull(cache.parse(source));
+            }
+            Assertions.assertEquals(9L * bytes.length + 1, cache.getHits() + cache.getMisses());
+            cache.clear();
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Checks that a source nested far deeper than the Java stack allows is
+     * encoded and decoded.
+     */
+    @Test
+    void testDeeplyNested() {
+        int depth = 100_000;
+        StringBuilder source = new StringBuilder("DEF main() DO\n");
+        for (int i = 0; i < depth; i++) {
+            source.append("WHILE x DO ");
+        }
+        source.append("x = ");
+        for (int i = 0; i < depth; i++) {
+            source.append("(");
+        }
+        source.append("1");
+        for (int i = 0; i < depth; i++) {
+            source.append(")");
+        }
+        source.append(";");
+        for (int i = 0; i < depth; i++) {
+            source.append(" END");
+        }
+        byte[] bytes = AstCache.encode(ParserFixtures.parse(source.append("\nEND").toString()));
+        Ast.Source decoded = AstCache.decode(bytes);
+        Assertions.assertArrayEquals(bytes, AstCache.encode(decoded));
+        Ast.Stmt statement = decoded.getMethods().get(0).getStatements().get(0);
+        for (int i = 0; i < depth; i++) {
+            statement = ((Ast.Stmt.While) statement).getStatements().get(0);
+        }
+        Ast.Expr expr = ((Ast.Stmt.Assignment) statement).getValue();
+        for (int i = 0; i < depth; i++) {
+            expr = ((Ast.Expr.Group) expr).getExpression();
+        }
+        Assertions.assertEquals(new Ast.Expr.Literal(BigInteger.ONE), expr);
+    }
+
+}
@@ -0,0 +1,181 @@
+package plc.project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The parts shared by {@link TokenCache} and {@link AstCache}: a directory of
+ * entries named by the SHA-256 hash of their source, the hit and miss counts,
+ * and the unsigned varints both encode their entries with.
+ */
+final class CacheDirectory {
+
+    private final Path directory;
+    private final String extension;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Creates a directory of entries with the given extension (such as
+     * {@code ".tokens"}), creating the directory if needed.
+     */
+    CacheDirectory(Path directory, String extension) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.extension = extension;
+    }
+
+    /**
+     * Returns the path of the entry for the source, which may not exist.
+     */
+    Path entry(CharSequence source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // required of every JVM
+        }
+        digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(source)));
+        StringBuilder name = new StringBuilder();
+        for (byte b : digest.digest()) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return directory.resolve(name.append(extension).toString());
+    }
+
+    /**
+     * Replaces the entry with the bytes, through a temporary file so readers
+     * never see a partly written entry.
+     */
+    void write(Path entry, byte[] bytes) throws IOException {
+        Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+        try {
+            Files.write(temporary, bytes);
+            try {
+                Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    void invalidate(CharSequence source) throws IOException {
+        Files.deleteIfExists(entry(source));
+    }
+
+    void clear() throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + extension)) {
+            for (Path entry : entries) {
+                Files.deleteIfExists(entry);
+            }
+        }
+    }
+
+    void hit() {
+        hits++;
+    }
+
+    void miss() {
+        misses++;
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+
+    double getHitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    /**
+     * Returns the next varint as the number of things which follow, each
+     * taking at least a byte, so it can't be more than the bytes left.
+     */
+    static int count(ByteBuffer buffer) {
+        int count = varint(buffer);
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid count.");
+        }
+        return count;
+    }
+
+    /**
+     * Returns the next varint, throwing a {@link
+     * java.nio.BufferUnderflowException} if the buffer ends first.
+     */
+    static int varint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid varint.");
+    }
+
+    /**
+     * A growable byte array for writing varints.
+     */
+    static final class Output {
+
+        private byte[] bytes = new byte[256];
+        private int size = 0;
+
+        void varint(int value) {
+            if (size + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Writes the length of the bytes and then the bytes.
+         */
+        void bytes(byte[] other) {
+            varint(other.length);
+            append(other, other.length);
+        }
+
+        /**
+         * Writes everything written to the other output.
+         */
+        void bytes(Output other) {
+            append(other.bytes, other.size);
+        }
+
+        private void append(byte[] other, int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+            }
+            System.arraycopy(other, 0, bytes, size, length);
+            size += length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+    }
+
+}
@@ -0,0 +1,102 @@
+package plc.project;
+
+/**
+ * A precompiled set of characters, used by the lexer in place of the single
+ * character regex patterns passed to {@link Lexer#peek(String...)}. Checking a
+ * character is a lookup in a 128 bit table (plus a short list for the few
+ * non-ASCII members), so it never compiles a pattern or allocates.
+ *
+ * Classes are written like the inside of a regex character class, for example
+ * {@code CharClass.of("A-Za-z_")} is the same as {@code "[A-Za-z_]"} and
+ * {@code CharClass.not("'\n\r")} is the same as {@code "[^'\n\r]"}.
+ */
+public final class CharClass {
+
+    /**
+     * Equivalent to the regex {@code "."}, which matches anything but a line
+     * terminator.
+     */
+    public static final CharClass ANY = not("\n\r\u0085\u2028\u2029");
+
+    private final long low; // members 0-63
+    private final long high; // members 64-127
+    private final char[] extra; // members >= 128
+    private final boolean negated;
+
+    private CharClass(long low, long high, char[] extra, boolean negated) {
+        this.low = low;
+        this.high = high;
+        this.extra = extra;
+        this.negated = negated;
+    }
+
+    /**
+     * Returns a class matching the given characters and {@code a-z} style
+     * ranges.
+     */
+    public static CharClass of(String members) {
+        return compile(members, false);
+    }
+
+    /**
+     * Returns a class matching every character except the given characters
+     * and ranges.
+     */
+    public static CharClass not(String members) {
+        return compile(members, true);
+    }
+
+    private static CharClass compile(String members, boolean negated) {
+        long low = 0;
+        long high = 0;
+        StringBuilder extra = new StringBuilder();
+        for (int i = 0; i < members.length(); i++) {
+            char first = members.charAt(i);
+            char last = first;
+            if (i + 2 < members.length() && members.charAt(i + 1) == '-') {
+                last = members.charAt(i + 2);
+                i += 2;
+            }
+            for (int c = first; c <= last; c++) { // an int, so a range ending at '\uffff' stops
+                if (c < 64) {
+                    low |= 1L << c;
+                } else if (c < 128) {
+                    high |= 1L << (c - 64);
+                } else {
+                    extra.append((char) c);
+                }
+            }
+        }
+        return new CharClass(low, high, extra.toString().toCharArray(), negated);
+    }
+
+    /**
+     * Returns true if the character is a member of this class.
+     */
+    public boolean test(char c) {
+        boolean member;
+        if (c < 64) {
+            member = ((low >>> c) & 1L) != 0;
+        } else if (c < 128) {
+            member = ((high >>> (c - 64)) & 1L) != 0;
+        } else {
+            member = false;
+            for (char e : extra) {
+                if (e == c) {
+                    member = true;
+                    break;
+                }
+            }
+        }
+        return member != negated;
+    }
+
+    /**
+     * Returns the non-ASCII characters named by this class, which are the
+     * only ones it can treat differently from any other non-ASCII character.
+     */
+    char[] extra() {
+        return extra.clone();
+    }
+
+}
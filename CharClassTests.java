@@ -0,0 +1,45 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Checks that a {@link CharClass} matches exactly the characters the regex
+ * character class it is written like does.
+ */
+final class CharClassTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSameCharacters(String test, String members) {
+        test(CharClass.of(members), Pattern.compile("[" + members + "]"));
+        test(CharClass.not(members), Pattern.compile("[^" + members + "]"));
+    }
+
+    private static Stream<Arguments> testSameCharacters() {
+        return Stream.of(
+                Arguments.of("Identifier", "A-Za-z0-9_-"),
+                Arguments.of("Whitespace", " \b\n\r\t"),
+                Arguments.of("Escapes", "bnrt'\"\\\\"),
+                Arguments.of("Non-ASCII", "é "),
+                Arguments.of("ASCII Boundaries", "\u0000?@\u007f"),
+                Arguments.of("Range Across ASCII", "x-ā"),
+                Arguments.of("Range To End", "\ufff0-\uffff"),
+                Arguments.of("Last Character", "\uffff"),
+                Arguments.of("Everything", "\u0000-\uffff")
+        );
+    }
+
+    private static void test(CharClass actual, Pattern expected) {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            Assertions.assertEquals(expected.matcher(String.valueOf((char) c)).matches(), actual.test((char) c),
+                    expected + " at " + c);
+        }
+    }
+
+}
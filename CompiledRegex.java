@@ -0,0 +1,645 @@
+package plc.homework;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link Pattern} compiled into a DFA, so {@link #matches(CharSequence)}
+ * takes time linear in the input no matter how the pattern is written. The
+ * backtracking in {@link Pattern} is exponential for patterns like {@link
+ * Regex#STRING}, where a nested {@code (...)*} can split the same input in
+ * many ways.
+ *
+ * Only the regular part of the regex syntax is supported: literals and
+ * escapes, {@code .}, character classes (with ranges, negation and {@code
+ * \d}, {@code \s} and {@code \w}), groups, alternation and the greedy
+ * quantifiers {@code *}, {@code +}, {@code ?} and {@code {n,m}}. Anything else
+ * (anchors, backreferences, lookaround, flags...) is rejected with an {@link
+ * IllegalArgumentException}. Like {@link Pattern}, inputs are matched by code
+ * point.
+ */
+public final class CompiledRegex {
+
+    public static final CompiledRegex
+            EMAIL = of(Regex.EMAIL),
+            EVEN_STRINGS = of(Regex.EVEN_STRINGS),
+            INTEGER_LIST = of(Regex.INTEGER_LIST),
+            NUMBER = of(Regex.NUMBER),
+            STRING = of(Regex.STRING);
+
+    private final String regex;
+    private final int[] boundaries; // symbol i is the code points boundaries[i] until boundaries[i + 1]
+    private final int[] ascii = new int[128];
+    private final int symbols;
+    private final int[] table; // state * symbols + symbol -> state, -1 if none
+    private final boolean[] accept;
+
+    private CompiledRegex(String regex, int[] boundaries, int[] table, boolean[] accept) {
+        this.regex = regex;
+        this.boundaries = boundaries;
+        this.symbols = boundaries.length;
+        this.table = table;
+        this.accept = accept;
+        for (int c = 0; c < 128; c++) {
+            ascii[c] = search(c);
+        }
+    }
+
+    public static CompiledRegex of(Pattern pattern) {
+        if (pattern.flags() != 0) {
+            throw new IllegalArgumentException("Flags are not supported: " + pattern);
+        }
+        return compile(pattern.pattern());
+    }
+
+    public static CompiledRegex compile(String regex) {
+        Node node = new RegexParser(regex).parse();
+        Nfa nfa = new Nfa();
+        int[] fragment = node.build(nfa);
+        return nfa.determinize(regex, fragment[0], fragment[1]);
+    }
+
+    /**
+     * Returns true if the entire input matches, like {@link
+     * java.util.regex.Matcher#matches()}.
+     */
+    public boolean matches(CharSequence input) {
+        int state = 0;
+        for (int i = 0; i < input.length(); ) {
+            int c = Character.codePointAt(input, i);
+            i += Character.charCount(c);
+            state = table[state * symbols + (c < 128 ? ascii[c] : search(c))];
+            if (state < 0) {
+                return false;
+            }
+        }
+        return accept[state];
+    }
+
+    /**
+     * Matches every input in parallel, returning a bitmap with bit i set if
+     * input i matches. The list should be random access.
+     */
+    public BitSet matchAll(List<? extends CharSequence> inputs) {
+        long[] words = new long[(inputs.size() + 63) / 64];
+        IntStream.range(0, words.length).parallel().forEach(word -> {
+            long bits = 0;
+            int start = word * 64;
+            for (int i = start; i < Math.min(start + 64, inputs.size()); i++) {
+                if (matches(inputs.get(i))) {
+                    bits |= 1L << (i - start);
+                }
+            }
+            words[word] = bits;
+        });
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Matches every line of the UTF-8 file in parallel, returning a bitmap as
+     * in {@link #matchAll(List)}.
+     */
+    public BitSet matchLines(Path file) throws IOException {
+        return matchAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    public int states() {
+        return accept.length;
+    }
+
+    @Override
+    public String toString() {
+        return regex;
+    }
+
+    private int search(int c) {
+        int low = 0;
+        int high = boundaries.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (boundaries[middle] <= c) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A set of code points, as sorted and disjoint inclusive ranges.
+     */
+    private static final class CodePoints {
+
+        private static final CodePoints
+                DIGIT = range('0', '9'),
+                SPACE = of(" \t\n\u000B\f\r"),
+                WORD = range('a', 'z').union(range('A', 'Z')).union(range('0', '9')).union(of("_")),
+                LINE_TERMINATOR = of("\n\r\u0085\u2028\u2029"),
+                DOT = LINE_TERMINATOR.complement();
+
+        private final int[] ranges; // start, end, start, end...
+
+        private CodePoints(int[] ranges) {
+            this.ranges = ranges;
+        }
+
+        private static CodePoints range(int start, int end) {
+            return new CodePoints(new int[] {start, end});
+        }
+
+        private static CodePoints of(String chars) {
+            CodePoints points = new CodePoints(new int[0]);
+            for (char c : chars.toCharArray()) {
+                points = points.union(range(c, c));
+            }
+            return points;
+        }
+
+        private CodePoints union(CodePoints other) {
+            List<int[]> all = new ArrayList<>();
+            for (int[] ranges : new int[][] {this.ranges, other.ranges}) {
+                for (int i = 0; i < ranges.length; i += 2) {
+                    all.add(new int[] {ranges[i], ranges[i + 1]});
+                }
+            }
+            all.sort((a, b) -> Integer.compare(a[0], b[0]));
+            int[] merged = new int[all.size() * 2];
+            int size = 0;
+            for (int[] range : all) {
+                if (size > 0 && range[0] <= merged[size - 1] + 1) {
+                    merged[size - 1] = Math.max(merged[size - 1], range[1]);
+                } else {
+                    merged[size++] = range[0];
+                    merged[size++] = range[1];
+                }
+            }
+            return new CodePoints(Arrays.copyOf(merged, size));
+        }
+
+        private CodePoints complement() {
+            int[] complement = new int[ranges.length + 2];
+            int size = 0;
+            int next = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] > next) {
+                    complement[size++] = next;
+                    complement[size++] = ranges[i] - 1;
+                }
+                next = ranges[i + 1] + 1;
+            }
+            if (next <= Character.MAX_CODE_POINT) {
+                complement[size++] = next;
+                complement[size++] = Character.MAX_CODE_POINT;
+            }
+            return new CodePoints(Arrays.copyOf(complement, size));
+        }
+
+        private boolean contains(int c) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] <= c && c <= ranges[i + 1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+    /**
+     * The parsed regex. Nodes can be built into the NFA more than once, which
+     * is how counted repetition is expanded.
+     */
+    private interface Node {
+
+        int[] build(Nfa nfa); // returns the start and end states
+
+    }
+
+    private static final class Chars implements Node {
+
+        private final CodePoints points;
+
+        private Chars(CodePoints points) {
+            this.points = points;
+        }
+
+        @Override
+        public int[] build(Nfa nfa) {
+            int start = nfa.state();
+            int end = nfa.state();
+            nfa.transition(start, points, end);
+            return new int[] {start, end};
+        }
+
+    }
+
+    private static final class Sequence implements Node {
+
+        private final List<Node> nodes;
+
+        private Sequence(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public int[] build(Nfa nfa) {
+            int start = nfa.state();
+            int end = start;
+            for (Node node : nodes) {
+                int[] fragment = node.build(nfa);
+                nfa.epsilon(end, fragment[0]);
+                end = fragment[1];
+            }
+            return new int[] {start, end};
+        }
+
+    }
+
+    private static final class Alternation implements Node {
+
+        private final List<Node> nodes;
+
+        private Alternation(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public int[] build(Nfa nfa) {
+            int start = nfa.state();
+            int end = nfa.state();
+            for (Node node : nodes) {
+                int[] fragment = node.build(nfa);
+                nfa.epsilon(start, fragment[0]);
+                nfa.epsilon(fragment[1], end);
+            }
+            return new int[] {start, end};
+        }
+
+    }
+
+    private static final class Repetition implements Node {
+
+        private final Node node;
+        private final int min;
+        private final int max; // -1 if unbounded
+
+        private Repetition(Node node, int min, int max) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public int[] build(Nfa nfa) {
+            int start = nfa.state();
+            int end = start;
+            for (int i = 0; i < min; i++) {
+                int[] fragment = node.build(nfa);
+                nfa.epsilon(end, fragment[0]);
+                end = fragment[1];
+            }
+            if (max < 0) {
+                int[] fragment = node.build(nfa);
+                nfa.epsilon(end, fragment[0]);
+                nfa.epsilon(fragment[1], end);
+            } else {
+                int last = nfa.state();
+                nfa.epsilon(end, last);
+                for (int i = min; i < max; i++) {
+                    int[] fragment = node.build(nfa);
+                    nfa.epsilon(end, fragment[0]);
+                    nfa.epsilon(fragment[1], last);
+                    end = fragment[1];
+                }
+                end = last;
+            }
+            return new int[] {start, end};
+        }
+
+    }
+
+    private static final class RegexParser {
+
+        private final String regex;
+        private int index = 0;
+
+        private RegexParser(String regex) {
+            this.regex = regex;
+        }
+
+        private Node parse() {
+            Node node = parseAlternation();
+            if (index != regex.length()) {
+                throw error("Unexpected '" + regex.charAt(index) + "'");
+            }
+            return node;
+        }
+
+        private Node parseAlternation() {
+            List<Node> nodes = new ArrayList<>();
+            nodes.add(parseSequence());
+            while (peek('|')) {
+                index++;
+                nodes.add(parseSequence());
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new Alternation(nodes);
+        }
+
+        private Node parseSequence() {
+            List<Node> nodes = new ArrayList<>();
+            while (index < regex.length() && !peek('|') && !peek(')')) {
+                nodes.add(parseRepetition());
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new Sequence(nodes);
+        }
+
+        private Node parseRepetition() {
+            Node node = parseAtom();
+            while (index < regex.length()) {
+                int min;
+                int max;
+                if (peek('*')) {
+                    min = 0;
+                    max = -1;
+                } else if (peek('+')) {
+                    min = 1;
+                    max = -1;
+                } else if (peek('?')) {
+                    min = 0;
+                    max = 1;
+                } else if (peek('{')) {
+                    int close = regex.indexOf('}', index);
+                    if (close < 0) {
+                        throw error("Missing '}'");
+                    }
+                    String[] bounds = regex.substring(index + 1, close).split(",", -1);
+                    try {
+                        min = Integer.parseInt(bounds[0]);
+                        max = bounds.length == 1 ? min : bounds[1].isEmpty() ? -1 : Integer.parseInt(bounds[1]);
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid repetition");
+                    }
+                    if (bounds.length > 2 || max >= 0 && max < min) {
+                        throw error("Invalid repetition");
+                    }
+                    index = close;
+                } else {
+                    break;
+                }
+                index++;
+                if (peek('?') || peek('+')) {
+                    throw error("Lazy and possessive quantifiers are not supported");
+                }
+                node = new Repetition(node, min, max);
+            }
+            return node;
+        }
+
+        private Node parseAtom() {
+            char c = regex.charAt(index++);
+            switch (c) {
+                case '(':
+                    if (peek('?')) {
+                        if (!regex.startsWith("?:", index)) {
+                            throw error("Only (?:...) groups are supported");
+                        }
+                        index += 2;
+                    }
+                    Node node = parseAlternation();
+                    if (!peek(')')) {
+                        throw error("Missing ')'");
+                    }
+                    index++;
+                    return node;
+                case '[':
+                    return new Chars(parseClass());
+                case '.':
+                    return new Chars(CodePoints.DOT);
+                case '\\':
+                    return new Chars(parseEscape());
+                case '^':
+                case '$':
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                case ')':
+                    throw error("Unsupported '" + c + "'");
+                default:
+                    index--;
+                    int point = regex.codePointAt(index);
+                    index += Character.charCount(point);
+                    return new Chars(CodePoints.range(point, point));
+            }
+        }
+
+        private CodePoints parseClass() {
+            boolean negated = peek('^');
+            if (negated) {
+                index++;
+            }
+            CodePoints points = new CodePoints(new int[0]);
+            boolean first = true;
+            while (!peek(']') || first) {
+                if (index >= regex.length()) {
+                    throw error("Missing ']'");
+                }
+                if (peek('[') || regex.startsWith("&&", index)) {
+                    throw error("Nested classes are not supported");
+                }
+                first = false;
+                CodePoints member;
+                int start = -1;
+                if (peek('\\')) {
+                    index++;
+                    member = parseEscape();
+                    if (member.ranges.length == 2 && member.ranges[0] == member.ranges[1]) {
+                        start = member.ranges[0];
+                    }
+                } else {
+                    start = regex.codePointAt(index);
+                    index += Character.charCount(start);
+                    member = CodePoints.range(start, start);
+                }
+                if (start >= 0 && peek('-') && index + 1 < regex.length() && regex.charAt(index + 1) != ']') {
+                    index++;
+                    int end;
+                    if (peek('\\')) {
+                        index++;
+                        CodePoints escape = parseEscape();
+                        if (escape.ranges.length != 2 || escape.ranges[0] != escape.ranges[1]) {
+                            throw error("Invalid range");
+                        }
+                        end = escape.ranges[0];
+                    } else {
+                        end = regex.codePointAt(index);
+                        index += Character.charCount(end);
+                    }
+                    if (end < start) {
+                        throw error("Invalid range");
+                    }
+                    member = CodePoints.range(start, end);
+                }
+                points = points.union(member);
+            }
+            index++;
+            return negated ? points.complement() : points;
+        }
+
+        private CodePoints parseEscape() {
+            if (index >= regex.length()) {
+                throw error("Trailing '\\'");
+            }
+            char c = regex.charAt(index++);
+            switch (c) {
+                case 'd': return CodePoints.DIGIT;
+                case 'D': return CodePoints.DIGIT.complement();
+                case 's': return CodePoints.SPACE;
+                case 'S': return CodePoints.SPACE.complement();
+                case 'w': return CodePoints.WORD;
+                case 'W': return CodePoints.WORD.complement();
+                case 't': return CodePoints.range('\t', '\t');
+                case 'n': return CodePoints.range('\n', '\n');
+                case 'r': return CodePoints.range('\r', '\r');
+                case 'f': return CodePoints.range('\f', '\f');
+                case 'a': return CodePoints.range('\u0007', '\u0007');
+                case 'e': return CodePoints.range('\u001B', '\u001B');
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        throw error("Unsupported escape '\\" + c + "'");
+                    }
+                    return CodePoints.range(c, c);
+            }
+        }
+
+        private boolean peek(char c) {
+            return index < regex.length() && regex.charAt(index) == c;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at index " + index + " in " + regex);
+        }
+
+    }
+
+    private static final class Nfa {
+
+        private final List<List<Integer>> epsilons = new ArrayList<>();
+        private final List<CodePoints> on = new ArrayList<>(); // class of the single transition
+        private final List<Integer> to = new ArrayList<>();
+
+        private int state() {
+            epsilons.add(new ArrayList<>());
+            on.add(null);
+            to.add(-1);
+            return epsilons.size() - 1;
+        }
+
+        private void epsilon(int from, int target) {
+            epsilons.get(from).add(target);
+        }
+
+        private void transition(int from, CodePoints points, int target) {
+            on.set(from, points);
+            to.set(from, target);
+        }
+
+        /**
+         * Builds the DFA with the subset construction. Code points are first
+         * split into symbols at every boundary of every class, so each class
+         * either contains a whole symbol or none of it.
+         */
+        private CompiledRegex determinize(String regex, int start, int end) {
+            TreeSet<Integer> starts = new TreeSet<>();
+            starts.add(0);
+            for (CodePoints points : on) {
+                if (points != null) {
+                    for (int i = 0; i < points.ranges.length; i += 2) {
+                        starts.add(points.ranges[i]);
+                        if (points.ranges[i + 1] < Character.MAX_CODE_POINT) {
+                            starts.add(points.ranges[i + 1] + 1);
+                        }
+                    }
+                }
+            }
+            int[] boundaries = starts.stream().mapToInt(Integer::intValue).toArray();
+            int symbols = boundaries.length;
+            List<BitSet> states = new ArrayList<>();
+            List<int[]> transitions = new ArrayList<>();
+            Map<BitSet, Integer> index = new HashMap<>();
+            Deque<Integer> work = new ArrayDeque<>();
+            BitSet initial = closure(start);
+            states.add(initial);
+            index.put(initial, 0);
+            work.add(0);
+            while (!work.isEmpty()) {
+                int state = work.poll();
+                BitSet subset = states.get(state);
+                int[] row = new int[symbols];
+                for (int symbol = 0; symbol < symbols; symbol++) {
+                    BitSet target = new BitSet();
+                    for (int s = subset.nextSetBit(0); s >= 0; s = subset.nextSetBit(s + 1)) {
+                        if (on.get(s) != null && on.get(s).contains(boundaries[symbol])) {
+                            target.or(closure(to.get(s)));
+                        }
+                    }
+                    if (target.isEmpty()) {
+                        row[symbol] = -1;
+                        continue;
+                    }
+                    Integer existing = index.get(target);
+                    if (existing == null) {
+                        existing = states.size();
+                        states.add(target);
+                        index.put(target, existing);
+                        work.add(existing);
+                    }
+                    row[symbol] = existing;
+                }
+                while (transitions.size() <= state) {
+                    transitions.add(null);
+                }
+                transitions.set(state, row);
+            }
+            int[] table = new int[states.size() * symbols];
+            boolean[] accept = new boolean[states.size()];
+            for (int state = 0; state < states.size(); state++) {
+                System.arraycopy(transitions.get(state), 0, table, state * symbols, symbols);
+                accept[state] = states.get(state).get(end);
+            }
+            return new CompiledRegex(regex, boundaries, table, accept);
+        }
+
+        private BitSet closure(int state) {
+            BitSet closure = new BitSet();
+            Deque<Integer> work = new ArrayDeque<>();
+            closure.set(state);
+            work.add(state);
+            while (!work.isEmpty()) {
+                for (int target : epsilons.get(work.poll())) {
+                    if (!closure.get(target)) {
+                        closure.set(target);
+                        work.add(target);
+                    }
+                }
+            }
+            return closure;
+        }
+
+    }
+
+}
@@ -0,0 +1,247 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that {@link Parser} handles nesting deeper than the Java stack
+ * allows.
+ */
+final class DeepNestingTests {
+
+    /**
+     * Checks that groups, calls and blocks nested far deeper than the Java
+     * stack allows are parsed, and that parsing with the explicit stack
+     * everywhere gives the same AST and errors as by recursion.
+     */
+    @Test
+    void testDeeplyNested() {
+        int depth = 100_000;
+        StringBuilder groups = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            groups.append(i % 2 == 0 ? "(" : "f(");
+        }
+        groups.append("1");
+        for (int i = 0; i < depth; i++) {
+            groups.append(")");
+        }
+        Ast.Expr expr = new Parser(new Lexer(groups).lex()).parseExpression();
+        for (int i = 0; i < depth; i++) {
+            expr = i % 2 == 0 ? ((Ast.Expr.Group) expr).getExpression() : ((Ast.Expr.Function) expr).getArguments().get(0);
+        }
+        Assertions.assertEquals(new Ast.Expr.Literal(BigInteger.ONE), expr);
+
+        StringBuilder blocks = new StringBuilder("DEF main() DO\n");
+        for (int i = 0; i < depth; i++) {
+            blocks.append(i % 2 == 0 ? "IF x DO " : "WHILE x DO ");
+        }
+        blocks.append("x = obj.f(1);");
+        for (int i = 0; i < depth; i++) {
+            blocks.append(" END");
+        }
+        Ast.Stmt statement = new Parser(new Lexer(blocks.append("\nEND")).lex()).parseSource().getMethods().get(0).getStatements().get(0);
+        for (int i = 0; i < depth; i++) {
+            statement = i % 2 == 0 ? ((Ast.Stmt.If) statement).getThenStatements().get(0) : ((Ast.Stmt.While) statement).getStatements().get(0);
+        }
+        Assertions.assertTrue(statement instanceof Ast.Stmt.Assignment);
+
+        String source = "LET count: Integer = (1 + 2) * 3;\n"
+                + "DEF main(): Integer DO\n"
+                + "    LET x: Integer = obj.f(a, (b - 1) / 2).g().h;\n"
+                + "    FOR item IN list DO IF item > x DO x = item; ELSE print(\"s\", 'c'); END END\n"
+                + "    WHILE x != 0 AND NOT DO x = x - 1; END\n"
+                + "    RETURN x;\n"
+                + "END\n";
+        for (String test : new String[] {source, source.replace("(b - 1)", "(b - )"), source.replace("ELSE", "ELSE END"),
+                source.replace("g()", "g(1"), source.replace("RETURN x;", "RETURN x")}) {
+            List<Token> tokens = new Lexer(test).lex();
+            Parser stack = new Parser(tokens);
+            stack.maxDepth = 0;
+            try {
+                Ast.Source expected = new Parser(tokens).parseSource();
+                Assertions.assertEquals(expected, stack.parseSource(), test);
+            } catch (ParseException e) {
+                ParseException actual = Assertions.assertThrows(ParseException.class, stack::parseSource, test);
+                Assertions.assertEquals(e.getIndex(), actual.getIndex(), test);
+            }
+        }
+    }
+
+    private static final String[] LITERALS = {"1", "2.5", "'c'", "\"s\"", "NIL"};
+    private static final String[] OPERATORS = {"+", "*", "AND", "<", "=="};
+    private static final String[] WORDS = {"LET", "DEF", "DO", "END", "IF", "ELSE", "FOR", "IN", "WHILE", "RETURN",
+            "=", ";", ":", "(", ")", ",", ".", "+", "AND", "x", "1"};
+
+    /**
+     * Checks that parsing with the explicit stack everywhere gives the same
+     * AST and errors as by recursion, both strict and recovering, on random
+     * sources with and without syntax errors.
+     */
+    @Test
+    void testStackMatchesRecursion() {
+        Random random = new Random(0);
+        for (int i = 0; i < 5000; i++) {
+            List<String> words = new ArrayList<>();
+            for (int count = random.nextInt(4); count > 0; count--) {
+                if (random.nextBoolean()) {
+                    words.add("LET");
+                    words.add("v" + count);
+                    words.add(":");
+                    words.add("Integer");
+                    words.add("=");
+                    expression(random, 0, words);
+                    words.add(";");
+                } else {
+                    words.add("DEF");
+                    words.add("m" + count);
+                    words.add("(");
+                    words.add(")");
+                    words.add("DO");
+                    statements(random, 0, words);
+                    words.add("END");
+                }
+            }
+            for (int edits = random.nextInt(3); edits > 0 && !words.isEmpty(); edits--) {
+                int at = random.nextInt(words.size());
+                switch (random.nextInt(3)) {
+                    case 0: words.remove(at); break;
+                    case 1: words.add(at, WORDS[random.nextInt(WORDS.length)]); break;
+                    default: words.set(at, WORDS[random.nextInt(WORDS.length)]);
+                }
+            }
+            String source = String.join(" ", words);
+            List<Token> tokens = new Lexer(source).lex();
+            Parser stack = new Parser(tokens);
+            stack.maxDepth = 0;
+            Assertions.assertEquals(parse(new Parser(tokens)), parse(stack), source);
+            Parser recovering = new Parser(tokens);
+            Parser recoveringStack = new Parser(tokens);
+            recoveringStack.maxDepth = 0;
+            Assertions.assertEquals(recovering.parseSourceRecovering(), recoveringStack.parseSourceRecovering(), source);
+            Assertions.assertEquals(indices(recovering.getErrors()), indices(recoveringStack.getErrors()), source);
+        }
+    }
+
+    /**
+     * Returns the AST of the source, or the index of the error.
+     */
+    private static Object parse(Parser parser) {
+        try {
+            return parser.parseSource();
+        } catch (ParseException e) {
+            return e.getIndex();
+        }
+    }
+
+    private static List<Integer> indices(List<ParseException> errors) {
+        List<Integer> indices = new ArrayList<>();
+        errors.forEach(error -> indices.add(error.getIndex()));
+        return indices;
+    }
+
+    private static void statements(Random random, int depth, List<String> words) {
+        for (int count = random.nextInt(3); count > 0; count--) {
+            switch (random.nextInt(depth < 3 ? 7 : 4)) {
+                case 0:
+                    words.add("LET");
+                    words.add("x");
+                    if (random.nextBoolean()) {
+                        words.add(":");
+                        words.add("Integer");
+                    }
+                    if (random.nextBoolean()) {
+                        words.add("=");
+                        expression(random, depth, words);
+                    }
+                    break;
+                case 1:
+                    expression(random, depth, words);
+                    words.add("=");
+                    expression(random, depth, words);
+                    break;
+                case 2:
+                    words.add("RETURN");
+                    expression(random, depth, words);
+                    break;
+                case 3:
+                    expression(random, depth, words);
+                    break;
+                case 4:
+                    words.add("IF");
+                    expression(random, depth, words);
+                    words.add("DO");
+                    statements(random, depth + 1, words);
+                    for (int count2 = random.nextInt(2); count2 > 0; count2--) {
+                        words.add("ELSE");
+                        statements(random, depth + 1, words);
+                    }
+                    words.add("END");
+                    continue;
+                case 5:
+                    words.add("FOR");
+                    words.add("y");
+                    words.add("IN");
+                    expression(random, depth, words);
+                    words.add("DO");
+                    statements(random, depth + 1, words);
+                    words.add("END");
+                    continue;
+                default:
+                    words.add("WHILE");
+                    expression(random, depth, words);
+                    words.add("DO");
+                    statements(random, depth + 1, words);
+                    words.add("END");
+                    continue;
+            }
+            words.add(";");
+        }
+    }
+
+    private static void expression(Random random, int depth, List<String> words) {
+        switch (random.nextInt(depth < 3 ? 7 : 2)) {
+            case 0:
+                words.add(LITERALS[random.nextInt(LITERALS.length)]);
+                break;
+            case 1:
+                words.add("x");
+                break;
+            case 2:
+                words.add("(");
+                expression(random, depth + 1, words);
+                words.add(")");
+                break;
+            case 3:
+            case 4:
+                if (random.nextBoolean()) {
+                    expression(random, depth + 1, words);
+                    words.add(".");
+                }
+                words.add("f");
+                words.add("(");
+                for (int count = random.nextInt(3); count > 0; count--) {
+                    expression(random, depth + 1, words);
+                    if (count > 1) {
+                        words.add(",");
+                    }
+                }
+                words.add(")");
+                break;
+            case 5:
+                expression(random, depth + 1, words);
+                words.add(".");
+                words.add("x");
+                break;
+            default:
+                expression(random, depth + 1, words);
+                words.add(OPERATORS[random.nextInt(OPERATORS.length)]);
+                expression(random, depth + 1, words);
+        }
+    }
+
+}
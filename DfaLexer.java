@@ -0,0 +1,111 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A table driven lexer, producing exactly the same tokens (and errors at the
+ * same indices) as {@link Lexer}.
+ *
+ * The token rules are written once as patterns in {@link #SPECIFICATION} and
+ * compiled into a minimized DFA by {@link LexerGenerator} when the class is
+ * loaded. Lexing is then a single pass over the input: each character is one
+ * table lookup, and the longest match wins, falling back to the last accepting
+ * state when the DFA gets stuck (for example {@code 1.} followed by anything
+ * but a digit is an integer and an operator).
+ *
+ * The patterns follow what {@link Lexer} actually accepts rather than the
+ * grammar, including its quirks: a character literal may have a second body
+ * character after an escape ({@code '\nx'}), a backslash followed by anything
+ * but an escape is an ordinary character ({@code '\q'}), and in strings a
+ * backslash is only an escape when it follows another character. Errors which
+ * {@link Lexer} reports after consuming more input (a line break in a string,
+ * or a valid escape outside of a literal) are error rules; anything else which
+ * gets stuck is reported at the character it got stuck on.
+ */
+public final class DfaLexer {
+
+    private static final String
+            ESCAPE = "[bnrt'\"\\]",
+            STRING_BODY = "[^\"\n\r]",
+            STRING_PLAIN = "[^\"\n\r\\]",
+            STRING_UNITS = "(" + STRING_BODY + STRING_PLAIN + "*\\\\" + ESCAPE + ")*";
+
+    public static final LexerGenerator SPECIFICATION = new LexerGenerator()
+            .token(Token.Type.IDENTIFIER, "[A-Za-z_][A-Za-z0-9_-]*")
+            .token(Token.Type.INTEGER, "[+-]?[0-9]+")
+            .token(Token.Type.DECIMAL, "[+-]?[0-9]+\\.[0-9]+")
+            .token(Token.Type.CHARACTER, "'(\\\\" + ESCAPE + "[^'\n\r]?|\\\\[^'\n\rbnrt\"\\]|[^'\n\r\\])'")
+            .token(Token.Type.STRING, "\"" + STRING_UNITS + "(" + STRING_BODY + STRING_PLAIN + "*)?\"")
+            .error("invalid escape", "\"" + STRING_UNITS + STRING_BODY + STRING_PLAIN + "*[\n\r]")
+            .error("Invalid Escape", "\\\\" + ESCAPE)
+            .token(Token.Type.OPERATOR, "[<>!=]=?|[^A-Za-z_0-9'\"\\ \b\n\r\t\u0085\u2028\u2029]");
+
+    private static final LexerGenerator.Dfa DFA = SPECIFICATION.generate();
+    private static final CharClass NON_WHITESPACE = CharClass.not(" \b\n\r\t");
+
+    private final CharSequence input;
+    private final Interner interner = new Interner();
+
+    public DfaLexer(CharSequence input) {
+        this.input = input;
+    }
+
+    /**
+     * Lexes the whole input, throwing a {@link ParseException} at the first
+     * invalid token.
+     */
+    public List<Token> lex() {
+        List<Token> tokens = new ArrayList<>();
+        int length = input.length();
+        int index = 0;
+        while (true) {
+            while (index < length && !NON_WHITESPACE.test(input.charAt(index))) {
+                index++;
+            }
+            if (index == length) {
+                return tokens;
+            }
+            int state = 0;
+            int rule = -1;
+            int end = index;
+            int i = index;
+            while (i < length) {
+                state = DFA.next(state, input.charAt(i));
+                if (state < 0) {
+                    break;
+                }
+                i++;
+                if (DFA.accept(state) >= 0) {
+                    rule = DFA.accept(state);
+                    end = i;
+                }
+            }
+            if (rule < 0) {
+                throw new ParseException("Unexpected character", i);
+            }
+            LexerGenerator.Rule accepted = DFA.rule(rule);
+            if (accepted.getError() != null) {
+                throw new ParseException(accepted.getError(), end);
+            }
+            tokens.add(new Token(accepted.getType(), literal(accepted.getType(), index, end), index));
+            index = end;
+        }
+    }
+
+    private String literal(Token.Type type, int start, int end) {
+        if (type == Token.Type.IDENTIFIER || type == Token.Type.OPERATOR) {
+            return interner.intern(input, start, end);
+        }
+        return input.subSequence(start, end).toString();
+    }
+
+    /**
+     * Returns the number of states and symbols (columns) of the generated
+     * table.
+     */
+    public static String describe() {
+        return DFA.states() + " states x " + DFA.symbols() + " symbols";
+    }
+
+}
@@ -0,0 +1,81 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Checks that {@link DfaLexer} produces exactly the same tokens as {@link
+ * Lexer}, and fails at the same index when the input is invalid.
+ */
+final class DfaLexerTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSameTokens(String test, String input) {
+        test(input);
+    }
+
+    private static Stream<Arguments> testSameTokens() {
+        return Stream.of(
+                Arguments.of("Identifier", "getName thelegend27 a-b _x"),
+                Arguments.of("Numbers", "1 -1 +1.5 007 1. 1.x -x"),
+                Arguments.of("Characters", "'c' '\\n' '\\'' '\\q' '\\nx'"),
+                Arguments.of("Strings", "\"\" \"abc\" \"a\\tb\" \"\\q\" \"a\\\"\""),
+                Arguments.of("Operators", "<= < >= == = != ! ( ) ; + - é"),
+                Arguments.of("Whitespace", " \b\n\r\t a \r\n b"),
+                Arguments.of("Source", LexerBenchmark.source(4096))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testSameErrors(String test, String input) {
+        test(input);
+    }
+
+    private static Stream<Arguments> testSameErrors() {
+        return Stream.of(
+                Arguments.of("Empty Character", "''"),
+                Arguments.of("Unterminated Character", "'ab'"),
+                Arguments.of("Unterminated String", "\"abc"),
+                Arguments.of("String Line Break", "\"abc\ndef\""),
+                Arguments.of("String Invalid Escape", "\"a\\q\""),
+                Arguments.of("Bare Escape", "x \\n y"),
+                Arguments.of("Bare Backslash", "x \\ y")
+        );
+    }
+
+    @Test
+    void testRandomInputs() {
+        Random random = new Random(0);
+        String alphabet = "abXZ_09-+.'\"\\nbrtq =<>!();\n\r\té";
+        for (int i = 0; i < 100_000; i++) {
+            StringBuilder input = new StringBuilder();
+            for (int length = random.nextInt(12); length > 0; length--) {
+                input.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            test(input.toString());
+        }
+    }
+
+    private static void test(String input) {
+        Assertions.assertEquals(lex(new Lexer(input)::lex), lex(new DfaLexer(input)::lex), input);
+    }
+
+    private static String lex(Supplier<List<Token>> lexer) {
+        try {
+            return lexer.get().toString();
+        } catch (ParseException e) {
+            return "ParseException at " + e.getIndex();
+        }
+    }
+
+}
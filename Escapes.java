@@ -0,0 +1,81 @@
+package plc.project;
+
+/**
+ * Decodes the escapes in character and string literals in a single pass.
+ *
+ * The escapes are the ones the lexer accepts: {@code \b}, {@code \n}, {@code
+ * \r}, {@code \t}, {@code \'}, {@code \"} and {@code \\}. Each backslash is
+ * decoded together with the character after it, left to right, so {@code
+ * \\n} is a backslash followed by {@code n}. A backslash followed by anything
+ * else is kept as it is, which only happens for tokens the lexer didn't
+ * produce.
+ */
+public final class Escapes {
+
+    private Escapes() {}
+
+    /**
+     * Returns the characters of the source from start to end with their
+     * escapes decoded. Characters before the first backslash are only read
+     * once, and a literal without escapes is copied straight from the source.
+     */
+    public static String decode(CharSequence source, int start, int end) {
+        int i = start;
+        while (i < end && source.charAt(i) != '\\') {
+            i++;
+        }
+        if (i == end) {
+            return source.subSequence(start, end).toString();
+        }
+        char[] value = new char[end - start];
+        int length = 0;
+        for (int k = start; k < i; k++) {
+            value[length++] = source.charAt(k);
+        }
+        while (i < end) {
+            char c = source.charAt(i++);
+            if (c == '\\' && i < end) {
+                int escape = escape(source.charAt(i));
+                if (escape >= 0) {
+                    c = (char) escape;
+                    i++;
+                }
+            }
+            value[length++] = c;
+        }
+        return new String(value, 0, length);
+    }
+
+    /**
+     * Returns the first character of the source from start to end with its
+     * escape decoded, as the value of a character literal.
+     */
+    public static char decodeCharacter(CharSequence source, int start, int end) {
+        char c = source.charAt(start);
+        if (c == '\\' && start + 1 < end) {
+            int escape = escape(source.charAt(start + 1));
+            if (escape >= 0) {
+                return (char) escape;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Returns the character the escape {@code \c} stands for, or -1 if it is
+     * not an escape.
+     */
+    private static int escape(char c) {
+        switch (c) {
+            case 'b': return '\b';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case '\'': return '\'';
+            case '"': return '"';
+            case '\\': return '\\';
+            default: return -1;
+        }
+    }
+
+}
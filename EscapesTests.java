@@ -0,0 +1,52 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that {@link Escapes} decodes string and character literals.
+ */
+final class EscapesTests {
+
+    /**
+     * Checks decoding random string and character literals against a
+     * straightforward reference decoder.
+     */
+    @Test
+    void testLiteralDecoding() {
+        Random random = new Random(0);
+        String[] pieces = {"a", "n", "b", " ", "'", "\\b", "\\n", "\\r", "\\t", "\\'", "\\\"", "\\\\"};
+        for (int i = 0; i < 100_000; i++) {
+            StringBuilder body = new StringBuilder();
+            for (int length = random.nextInt(10); length > 0; length--) {
+                body.append(pieces[random.nextInt(pieces.length)]);
+            }
+            String literal = "\"" + body + "\"";
+            Assertions.assertEquals(new Ast.Expr.Literal(decode(body.toString())),
+                    new Parser(Arrays.asList(new Token(Token.Type.STRING, literal, 0))).parseExpression(), literal);
+            String character = "'" + pieces[random.nextInt(pieces.length)] + "'";
+            if (!character.equals("'''")) {
+                Assertions.assertEquals(new Ast.Expr.Literal(decode(character.substring(1, character.length() - 1)).charAt(0)),
+                        new Parser(Arrays.asList(new Token(Token.Type.CHARACTER, character, 0))).parseExpression(), character);
+            }
+        }
+    }
+
+    private static String decode(String body) {
+        Matcher matcher = Pattern.compile("\\\\([bnrt'\"\\\\])").matcher(body);
+        StringBuffer decoded = new StringBuffer();
+        while (matcher.find()) {
+            String escape = "bnrt".indexOf(matcher.group(1).charAt(0)) >= 0
+                    ? String.valueOf("\b\n\r\t".charAt("bnrt".indexOf(matcher.group(1).charAt(0))))
+                    : matcher.group(1);
+            matcher.appendReplacement(decoded, Matcher.quoteReplacement(escape));
+        }
+        return matcher.appendTail(decoded).toString();
+    }
+
+}
@@ -0,0 +1,214 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Creates the expressions for a {@link Parser}, sharing one node between all
+ * structurally identical side-effect-free expressions (hash consing). Code
+ * which repeats the same {@code obj.field} or {@code (x + 1)} thousands of
+ * times then holds one node for it, and later passes can use the identity of
+ * a node as a cache key.
+ *
+ * Literals, groups, binary expressions and accesses are shared once their
+ * children are. Functions may have side effects, so they are never shared,
+ * and neither is anything containing one.
+ *
+ * The analyzer annotates each node with its type and each access with its
+ * variable, so a shared node must mean the same thing everywhere. Two
+ * accesses of a name without a receiver are only shared if the name refers to
+ * the same declaration, following the scopes of the {@link Analyzer}: the
+ * parser reports each method, block and declaration, so that {@code x} in two
+ * methods with a parameter {@code x} gives two nodes, while a field {@code x}
+ * used in both gives one. Nothing which names a variable is shared between
+ * sources.
+ *
+ * A factory can be used for any number of parses one after the other, and
+ * keeps its nodes between them. It is not thread safe.
+ */
+public final class ExpressionFactory {
+
+    private static final int LITERAL = 0, GROUP = 1, BINARY = 2, ACCESS = 3;
+
+    private final Map<Key, Ast.Expr> expressions = new HashMap<>();
+    private final Set<Ast.Expr> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<String, Integer> bindings = new HashMap<>();
+    private final List<Object> undo = new ArrayList<>(); // name and previous binding of each declaration in an open scope
+    private final List<Integer> scopes = new ArrayList<>(); // size of undo when each open scope was entered
+    private int unboundInFields = 0; // the binding of names not declared yet, which are undefined in a field
+    private int unboundInMethods = 0; // and in a method may be a field declared after it, see startSource
+    private int next = 0;
+
+    /**
+     * Returns the number of distinct expressions created so far.
+     */
+    public int size() {
+        return expressions.size();
+    }
+
+    /**
+     * Returns true if the node was created by this factory, so it may be
+     * shared between several parents.
+     */
+    public boolean isShared(Ast.Expr expr) {
+        return shared.contains(expr);
+    }
+
+    public Ast.Expr.Literal literal(Object literal) {
+        Key key = new Key(LITERAL, literal, null, null, 0);
+        Ast.Expr expr = expressions.get(key);
+        return expr != null ? (Ast.Expr.Literal) expr : add(key, new Ast.Expr.Literal(literal));
+    }
+
+    public Ast.Expr group(Ast.Expr expression) {
+        if (!shared.contains(expression)) {
+            return new Ast.Expr.Group(expression);
+        }
+        Key key = new Key(GROUP, null, expression, null, 0);
+        Ast.Expr expr = expressions.get(key);
+        return expr != null ? expr : add(key, new Ast.Expr.Group(expression));
+    }
+
+    public Ast.Expr binary(String operator, Ast.Expr left, Ast.Expr right) {
+        if (!shared.contains(left) || !shared.contains(right)) {
+            return new Ast.Expr.Binary(operator, left, right);
+        }
+        Key key = new Key(BINARY, operator, left, right, 0);
+        Ast.Expr expr = expressions.get(key);
+        return expr != null ? expr : add(key, new Ast.Expr.Binary(operator, left, right));
+    }
+
+    public Ast.Expr access(Optional<Ast.Expr> receiver, String name) {
+        Key key;
+        if (receiver.isPresent()) {
+            if (!shared.contains(receiver.get())) {
+                return new Ast.Expr.Access(receiver, name);
+            }
+            key = new Key(ACCESS, name, receiver.get(), null, 0);
+        } else {
+            key = new Key(ACCESS, name, null, null, bindings.getOrDefault(name, scopes.isEmpty() ? unboundInFields : unboundInMethods));
+        }
+        Ast.Expr expr = expressions.get(key);
+        return expr != null ? expr : add(key, new Ast.Expr.Access(receiver, name));
+    }
+
+    private <T extends Ast.Expr> T add(Key key, T expr) {
+        expressions.put(key, expr);
+        shared.add(expr);
+        return expr;
+    }
+
+    /**
+     * Starts a new source, in which no names are declared yet. The analyzer
+     * declares every field before it visits the methods, so a name which
+     * isn't declared yet is undefined in the value of a field, but in a
+     * method it may refer to a field after it (with {@link
+     * Parser#parseSourceRecovering()}), so the two aren't shared.
+     */
+    void startSource() {
+        bindings.clear();
+        undo.clear();
+        scopes.clear();
+        unboundInFields = ++next;
+        unboundInMethods = ++next;
+    }
+
+    /**
+     * Declares a name in the current scope, from which on its accesses refer
+     * to the new declaration.
+     */
+    void declare(String name) {
+        Integer previous = bindings.put(name, ++next);
+        if (!scopes.isEmpty()) {
+            undo.add(name);
+            undo.add(previous);
+        }
+    }
+
+    void enterScope() {
+        scopes.add(undo.size());
+    }
+
+    /**
+     * Leaves the current scope, so the names declared in it refer to what
+     * they did before it.
+     */
+    void exitScope() {
+        int start = scopes.remove(scopes.size() - 1);
+        for (int i = undo.size() - 2; i >= start; i -= 2) {
+            String name = (String) undo.get(i);
+            Integer previous = (Integer) undo.get(i + 1);
+            if (previous == null) {
+                bindings.remove(name);
+            } else {
+                bindings.put(name, previous);
+            }
+        }
+        undo.subList(start, undo.size()).clear();
+    }
+
+    /**
+     * Returns the number of open scopes.
+     */
+    int scopes() {
+        return scopes.size();
+    }
+
+    /**
+     * Leaves scopes until the given number are open, after a syntax error
+     * left the parser inside some.
+     */
+    void exitScopes(int count) {
+        while (scopes.size() > count) {
+            exitScope();
+        }
+    }
+
+    /**
+     * The kind and contents of an expression. Children are compared by
+     * identity, since equal children are already the same node.
+     */
+    private static final class Key {
+
+        private final int kind;
+        private final Object value;
+        private final Ast.Expr left;
+        private final Ast.Expr right;
+        private final int binding;
+
+        private Key(int kind, Object value, Ast.Expr left, Ast.Expr right, int binding) {
+            this.kind = kind;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.binding = binding;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return kind == other.kind && binding == other.binding && left == other.left && right == other.right
+                    && Objects.equals(value, other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 31 * kind + Objects.hashCode(value);
+            hash = 31 * hash + System.identityHashCode(left);
+            hash = 31 * hash + System.identityHashCode(right);
+            return 31 * hash + binding;
+        }
+
+    }
+
+}
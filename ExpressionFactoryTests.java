@@ -0,0 +1,146 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that an {@link ExpressionFactory} shares expressions without
+ * changing what they mean.
+ */
+final class ExpressionFactoryTests {
+
+    /**
+     * Checks that an {@link ExpressionFactory} shares identical expressions
+     * without changing the AST, and only shares an access of a name where it
+     * refers to the same declaration, so the analyzer's annotations hold for
+     * every use of a shared node.
+     */
+    @Test
+    void testExpressionFactory() {
+        String source = "LET x: Integer = 1;\n"
+                + "LET obj: Object = NIL;\n"
+                + "DEF f(x: Integer): Integer DO\n"
+                + "    print(obj.field + 1, (x + 1), obj.field + 1);\n"
+                + "    IF x > 0 DO LET x = 2; print(x + 1); ELSE print(x + 1); END\n"
+                + "    FOR x IN list DO print(x + 1); END\n"
+                + "    LET y = x + 1;\n"
+                + "    LET x = 3;\n"
+                + "    RETURN x + 1;\n"
+                + "END\n"
+                + "DEF g(): Integer DO\n"
+                + "    WHILE x + 1 > 0 DO print(obj.field + 1, x + 1); END\n"
+                + "    RETURN f(x + 1);\n"
+                + "END\n";
+        TokenBuffer tokens = new Lexer(source).lexBuffer();
+        Ast.Source expected = new Parser(tokens).parseSource();
+        for (int maxDepth : new int[] {64, 0}) {
+            Parser parser = new Parser(tokens, new ExpressionFactory());
+            parser.maxDepth = maxDepth;
+            Ast.Source parsed = parser.parseSource();
+            Assertions.assertEquals(expected, parsed);
+            Assertions.assertEquals(7L, resolve(parsed).values().stream().distinct().count());
+        }
+
+        ExpressionFactory factory = new ExpressionFactory();
+        Ast.Source shared = new Parser(tokens, factory).parseSource();
+        List<Ast.Expr> arguments = ((Ast.Expr.Function) ((Ast.Stmt.Expression) shared.getMethods().get(0).getStatements().get(0)).getExpression()).getArguments();
+        Assertions.assertSame(arguments.get(0), arguments.get(2));
+        Assertions.assertTrue(factory.isShared(arguments.get(1)));
+        Ast.Expr parameter = ((Ast.Expr.Binary) ((Ast.Expr.Group) arguments.get(1)).getExpression()).getLeft();
+        Ast.Expr field = ((Ast.Expr.Binary) ((Ast.Expr.Binary) ((Ast.Stmt.While) shared.getMethods().get(1).getStatements().get(0)).getCondition()).getLeft()).getLeft();
+        Assertions.assertEquals(parameter, field);
+        Assertions.assertNotSame(parameter, field);
+        Ast.Source again = new Parser(tokens, factory).parseSource();
+        Assertions.assertSame(shared.getFields().get(0).getValue().get(), again.getFields().get(0).getValue().get());
+        Assertions.assertNotSame(arguments.get(0), ((Ast.Expr.Function) ((Ast.Stmt.Expression) again.getMethods().get(0).getStatements().get(0)).getExpression()).getArguments().get(0));
+
+        String invalid = source.replace("LET y = x + 1;", "LET y = x +;");
+        Parser recovering = new Parser(new Lexer(invalid).lexBuffer(), new ExpressionFactory());
+        Ast.Source recovered = recovering.parseSourceRecovering();
+        Assertions.assertEquals(1, recovering.getErrors().size());
+        resolve(recovered);
+    }
+
+    /**
+     * Resolves each access of a name without a receiver to its declaration,
+     * following the scopes of the analyzer, and fails if a node is used for
+     * two different declarations.
+     */
+    private static Map<Ast.Expr.Access, Object> resolve(Ast.Source source) {
+        Map<Ast.Expr.Access, Object> declarations = new IdentityHashMap<>();
+        Deque<Map<String, Object>> scopes = new ArrayDeque<>();
+        scopes.push(new HashMap<>());
+        for (Ast.Field field : source.getFields()) {
+            field.getValue().ifPresent(value -> resolve(value, scopes, declarations));
+            scopes.peek().put(field.getName(), new Object());
+        }
+        for (Ast.Method method : source.getMethods()) {
+            scopes.push(new HashMap<>());
+            method.getParameters().forEach(parameter -> scopes.peek().put(parameter, new Object()));
+            resolve(method.getStatements(), scopes, declarations, null);
+            scopes.pop();
+        }
+        return declarations;
+    }
+
+    private static void resolve(List<Ast.Stmt> statements, Deque<Map<String, Object>> scopes, Map<Ast.Expr.Access, Object> declarations, String variable) {
+        scopes.push(new HashMap<>());
+        if (variable != null) {
+            scopes.peek().put(variable, new Object());
+        }
+        for (Ast.Stmt statement : statements) {
+            if (statement instanceof Ast.Stmt.Expression) {
+                resolve(((Ast.Stmt.Expression) statement).getExpression(), scopes, declarations);
+            } else if (statement instanceof Ast.Stmt.Declaration) {
+                ((Ast.Stmt.Declaration) statement).getValue().ifPresent(value -> resolve(value, scopes, declarations));
+                scopes.peek().put(((Ast.Stmt.Declaration) statement).getName(), new Object());
+            } else if (statement instanceof Ast.Stmt.Assignment) {
+                resolve(((Ast.Stmt.Assignment) statement).getValue(), scopes, declarations);
+                resolve(((Ast.Stmt.Assignment) statement).getReceiver(), scopes, declarations);
+            } else if (statement instanceof Ast.Stmt.If) {
+                resolve(((Ast.Stmt.If) statement).getCondition(), scopes, declarations);
+                resolve(((Ast.Stmt.If) statement).getThenStatements(), scopes, declarations, null);
+                resolve(((Ast.Stmt.If) statement).getElseStatements(), scopes, declarations, null);
+            } else if (statement instanceof Ast.Stmt.For) {
+                resolve(((Ast.Stmt.For) statement).getValue(), scopes, declarations);
+                resolve(((Ast.Stmt.For) statement).getStatements(), scopes, declarations, ((Ast.Stmt.For) statement).getName());
+            } else if (statement instanceof Ast.Stmt.While) {
+                resolve(((Ast.Stmt.While) statement).getCondition(), scopes, declarations);
+                resolve(((Ast.Stmt.While) statement).getStatements(), scopes, declarations, null);
+            } else {
+                resolve(((Ast.Stmt.Return) statement).getValue(), scopes, declarations);
+            }
+        }
+        scopes.pop();
+    }
+
+    private static void resolve(Ast.Expr expr, Deque<Map<String, Object>> scopes, Map<Ast.Expr.Access, Object> declarations) {
+        if (expr instanceof Ast.Expr.Group) {
+            resolve(((Ast.Expr.Group) expr).getExpression(), scopes, declarations);
+        } else if (expr instanceof Ast.Expr.Binary) {
+            resolve(((Ast.Expr.Binary) expr).getLeft(), scopes, declarations);
+            resolve(((Ast.Expr.Binary) expr).getRight(), scopes, declarations);
+        } else if (expr instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) expr;
+            if (access.getReceiver().isPresent()) {
+                resolve(access.getReceiver().get(), scopes, declarations);
+            } else {
+                Object declaration = scopes.stream().filter(scope -> scope.containsKey(access.getName()))
+                        .findFirst().map(scope -> scope.get(access.getName())).orElse(access.getName());
+                Object previous = declarations.put(access, declaration);
+                Assertions.assertTrue(previous == null || previous == declaration, "shared access of " + access.getName());
+            }
+        } else if (expr instanceof Ast.Expr.Function) {
+            ((Ast.Expr.Function) expr).getReceiver().ifPresent(receiver -> resolve(receiver, scopes, declarations));
+            ((Ast.Expr.Function) expr).getArguments().forEach(argument -> resolve(argument, scopes, declarations));
+        }
+    }
+
+}
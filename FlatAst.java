@@ -0,0 +1,485 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A compact form of the AST, for holding large programs in memory. Instead of
+ * an object per node with {@link Optional} and {@link List} wrappers, every
+ * node is an entry in a few parallel arrays, and names and literal values are
+ * numbers in a shared constant pool.
+ *
+ * Each node has a {@link Kind} and three int slots, {@link #first(int)},
+ * {@link #second(int)} and {@link #third(int)}. A slot holds a node, a
+ * constant, a list or -1 for an absent optional:
+ *
+ * <ul>
+ *     <li>{@code SOURCE}: list of fields, list of methods</li>
+ *     <li>{@code FIELD}: name, type name, value node</li>
+ *     <li>{@code METHOD}: name, signature list (the parameter count, the name
+ *     and type name of each parameter, then the return type name), list of
+ *     statements</li>
+ *     <li>{@code EXPRESSION}: expression node</li>
+ *     <li>{@code DECLARATION}: name, type name, value node</li>
+ *     <li>{@code ASSIGNMENT}: receiver node, value node</li>
+ *     <li>{@code IF}: condition node, list of then statements, list of else
+ *     statements</li>
+ *     <li>{@code FOR}: name, value node, list of statements</li>
+ *     <li>{@code WHILE}: condition node, list of statements</li>
+ *     <li>{@code RETURN}: value node</li>
+ *     <li>{@code LITERAL}: value</li>
+ *     <li>{@code GROUP}: expression node</li>
+ *     <li>{@code BINARY}: operator, left node, right node</li>
+ *     <li>{@code ACCESS}: name, receiver node</li>
+ *     <li>{@code FUNCTION}: name, receiver node, list of arguments</li>
+ * </ul>
+ *
+ * A list is an offset into a separate int array holding its size followed by
+ * its items, see {@link #size(int)} and {@link #item(int, int)}. Children are
+ * added before their parents, so a node's children always have lower
+ * numbers, the root is the last node, and scanning the nodes in order visits
+ * them bottom up.
+ *
+ * There is no flat-backed visitor: the {@link Analyzer}, {@link Interpreter}
+ * and {@link Generator} work on {@link Ast} nodes, which hold their children
+ * directly and are annotated by the analyzer, so they run on an object tree
+ * rebuilt from this one by {@link #toSource()} or {@link #accept(Ast.Visitor,
+ * int)}. The compact form only saves memory while the program is held and
+ * not visited; code that wants to stay flat walks the slots directly.
+ */
+public final class FlatAst {
+
+    public enum Kind {
+        SOURCE, FIELD, METHOD,
+        EXPRESSION, DECLARATION, ASSIGNMENT, IF, FOR, WHILE, RETURN,
+        LITERAL, GROUP, BINARY, ACCESS, FUNCTION
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private byte[] kinds = new byte[64];
+    private int[] first = new int[64];
+    private int[] second = new int[64];
+    private int[] third = new int[64];
+    private int size = 0;
+    private int[] lists = new int[64];
+    private int listsSize = 0;
+    private Object[] constants = new Object[16];
+    private int constantsSize = 0;
+    private final Map<Object, Integer> numbers = new HashMap<>(); // only while building
+
+    private FlatAst() {}
+
+    /**
+     * Returns the compact form of the source. The tree is walked with an
+     * explicit stack, so sources nested deeper than the Java stack allows (see
+     * {@link Parser}) can be flattened.
+     */
+    public static FlatAst of(Ast.Source source) {
+        FlatAst flat = new FlatAst();
+        ArrayDeque<Pending> stack = new ArrayDeque<>();
+        stack.push(new Pending(source));
+        while (true) {
+            Pending pending = stack.peek();
+            if (pending.next < pending.nodes.length) {
+                stack.push(new Pending(child(pending.ast, pending.next)));
+                continue;
+            }
+            stack.pop();
+            int node = flat.add(pending.ast, pending.nodes);
+            if (stack.isEmpty()) {
+                break;
+            }
+            Pending parent = stack.peek();
+            parent.nodes[parent.next++] = node;
+        }
+        flat.numbers.clear();
+        flat.kinds = Arrays.copyOf(flat.kinds, flat.size);
+        flat.first = Arrays.copyOf(flat.first, flat.size);
+        flat.second = Arrays.copyOf(flat.second, flat.size);
+        flat.third = Arrays.copyOf(flat.third, flat.size);
+        flat.lists = Arrays.copyOf(flat.lists, flat.listsSize);
+        flat.constants = Arrays.copyOf(flat.constants, flat.constantsSize);
+        return flat;
+    }
+
+    /**
+     * Returns the number of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the {@code SOURCE} node, which is the last one.
+     */
+    public int root() {
+        return size - 1;
+    }
+
+    public Kind kind(int node) {
+        return KINDS[kinds[node]];
+    }
+
+    public int first(int node) {
+        return first[node];
+    }
+
+    public int second(int node) {
+        return second[node];
+    }
+
+    public int third(int node) {
+        return third[node];
+    }
+
+    /**
+     * Returns the size of the list at the given offset.
+     */
+    public int size(int list) {
+        return lists[list];
+    }
+
+    /**
+     * Returns an item of the list at the given offset.
+     */
+    public int item(int list, int index) {
+        return lists[list + 1 + index];
+    }
+
+    /**
+     * Returns the number of constants.
+     */
+    public int constants() {
+        return constantsSize;
+    }
+
+    /**
+     * Returns the value of a constant: a name, or the value of a literal
+     * ({@code null}, a {@link Boolean}, {@link java.math.BigInteger}, {@link
+     * java.math.BigDecimal}, {@link Character} or {@link String}).
+     */
+    public Object constant(int constant) {
+        return constants[constant];
+    }
+
+    /**
+     * Returns the number of bytes used by the arrays of this tree, not
+     * counting the constants themselves.
+     */
+    public long bytes() {
+        return 16 + kinds.length + 3 * (16 + 4L * size) + 16 + 4L * lists.length + 16 + 4L * constants.length;
+    }
+
+    /**
+     * Rebuilds the whole subtree of a node as {@link Ast} nodes with {@link
+     * #toAst(int)} and visits it with a visitor written for the object AST,
+     * so each call allocates the subtree again. To keep the annotations the
+     * {@link Analyzer} adds for the {@link Interpreter} or {@link Generator},
+     * build the tree once with {@link #toSource()} and visit that instead.
+     */
+    public <T> T accept(Ast.Visitor<T> visitor, int node) {
+        return visitor.visit(toAst(node));
+    }
+
+    /**
+     * Returns the whole tree as an {@link Ast.Source}.
+     */
+    public Ast.Source toSource() {
+        return (Ast.Source) toAst(root());
+    }
+
+    /**
+     * Returns the subtree of a node as {@link Ast} nodes.
+     */
+    public Ast toAst(int node) {
+        switch (kind(node)) {
+            case SOURCE: {
+                List<Ast.Field> fields = new ArrayList<>(size(first[node]));
+                for (int i = 0; i < size(first[node]); i++) {
+                    fields.add((Ast.Field) toAst(item(first[node], i)));
+                }
+                List<Ast.Method> methods = new ArrayList<>(size(second[node]));
+                for (int i = 0; i < size(second[node]); i++) {
+                    methods.add((Ast.Method) toAst(item(second[node], i)));
+                }
+                return new Ast.Source(fields, methods);
+            }
+            case FIELD:
+                return new Ast.Field(name(first[node]), name(second[node]), expression(third[node]));
+            case METHOD: {
+                int signature = second[node];
+                int count = lists[signature];
+                List<String> parameters = new ArrayList<>(count);
+                List<String> parameterTypeNames = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    parameters.add(name(lists[signature + 1 + 2 * i]));
+                    parameterTypeNames.add(name(lists[signature + 2 + 2 * i]));
+                }
+                int returnTypeName = lists[signature + 1 + 2 * count];
+                return new Ast.Method(name(first[node]), parameters, parameterTypeNames,
+                        returnTypeName < 0 ? Optional.empty() : Optional.of(name(returnTypeName)), statements(third[node]));
+            }
+            case EXPRESSION:
+                return new Ast.Stmt.Expression(expr(first[node]));
+            case DECLARATION:
+                return new Ast.Stmt.Declaration(name(first[node]),
+                        second[node] < 0 ? Optional.empty() : Optional.of(name(second[node])), expression(third[node]));
+            case ASSIGNMENT:
+                return new Ast.Stmt.Assignment(expr(first[node]), expr(second[node]));
+            case IF:
+                return new Ast.Stmt.If(expr(first[node]), statements(second[node]), statements(third[node]));
+            case FOR:
+                return new Ast.Stmt.For(name(first[node]), expr(second[node]), statements(third[node]));
+            case WHILE:
+                return new Ast.Stmt.While(expr(first[node]), statements(second[node]));
+            case RETURN:
+                return new Ast.Stmt.Return(expr(first[node]));
+            case LITERAL:
+                return new Ast.Expr.Literal(constants[first[node]]);
+            case GROUP:
+                return new Ast.Expr.Group(expr(first[node]));
+            case BINARY:
+                return new Ast.Expr.Binary(name(first[node]), expr(second[node]), expr(third[node]));
+            case ACCESS:
+                return new Ast.Expr.Access(expression(second[node]), name(first[node]));
+            case FUNCTION: {
+                List<Ast.Expr> arguments = new ArrayList<>(size(third[node]));
+                for (int i = 0; i < size(third[node]); i++) {
+                    arguments.add(expr(item(third[node], i)));
+                }
+                return new Ast.Expr.Function(expression(second[node]), name(first[node]), arguments);
+            }
+            default:
+                throw new AssertionError(kind(node));
+        }
+    }
+
+    private String name(int constant) {
+        return (String) constants[constant];
+    }
+
+    private Ast.Expr expr(int node) {
+        return (Ast.Expr) toAst(node);
+    }
+
+    private Optional<Ast.Expr> expression(int node) {
+        return node < 0 ? Optional.empty() : Optional.of(expr(node));
+    }
+
+    private List<Ast.Stmt> statements(int list) {
+        List<Ast.Stmt> statements = new ArrayList<>(size(list));
+        for (int i = 0; i < size(list); i++) {
+            statements.add((Ast.Stmt) toAst(item(list, i)));
+        }
+        return statements;
+    }
+
+    /**
+     * Returns the number of children of the node, which are added before it
+     * in the order {@link #child(Ast, int)} gives them.
+     */
+    private static int children(Ast ast) {
+        if (ast instanceof Ast.Source) {
+            return ((Ast.Source) ast).getFields().size() + ((Ast.Source) ast).getMethods().size();
+        } else if (ast instanceof Ast.Field) {
+            return ((Ast.Field) ast).getValue().isPresent() ? 1 : 0;
+        } else if (ast instanceof Ast.Method) {
+            return ((Ast.Method) ast).getStatements().size();
+        } else if (ast instanceof Ast.Stmt.Declaration) {
+            return ((Ast.Stmt.Declaration) ast).getValue().isPresent() ? 1 : 0;
+        } else if (ast instanceof Ast.Stmt.Assignment || ast instanceof Ast.Expr.Binary) {
+            return 2;
+        } else if (ast instanceof Ast.Stmt.If) {
+            return 1 + ((Ast.Stmt.If) ast).getThenStatements().size() + ((Ast.Stmt.If) ast).getElseStatements().size();
+        } else if (ast instanceof Ast.Stmt.For) {
+            return 1 + ((Ast.Stmt.For) ast).getStatements().size();
+        } else if (ast instanceof Ast.Stmt.While) {
+            return 1 + ((Ast.Stmt.While) ast).getStatements().size();
+        } else if (ast instanceof Ast.Expr.Literal) {
+            return 0;
+        } else if (ast instanceof Ast.Expr.Access) {
+            return ((Ast.Expr.Access) ast).getReceiver().isPresent() ? 1 : 0;
+        } else if (ast instanceof Ast.Expr.Function) {
+            return (((Ast.Expr.Function) ast).getReceiver().isPresent() ? 1 : 0) + ((Ast.Expr.Function) ast).getArguments().size();
+        }
+        return 1; // an expression statement, return, or group
+    }
+
+    private static Ast child(Ast ast, int index) {
+        if (ast instanceof Ast.Source) {
+            Ast.Source source = (Ast.Source) ast;
+            int fields = source.getFields().size();
+            return index < fields ? source.getFields().get(index) : source.getMethods().get(index - fields);
+        } else if (ast instanceof Ast.Field) {
+            return ((Ast.Field) ast).getValue().get();
+        } else if (ast instanceof Ast.Method) {
+            return ((Ast.Method) ast).getStatements().get(index);
+        } else if (ast instanceof Ast.Stmt.Expression) {
+            return ((Ast.Stmt.Expression) ast).getExpression();
+        } else if (ast instanceof Ast.Stmt.Declaration) {
+            return ((Ast.Stmt.Declaration) ast).getValue().get();
+        } else if (ast instanceof Ast.Stmt.Assignment) {
+            Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) ast;
+            return index == 0 ? assignment.getReceiver() : assignment.getValue();
+        } else if (ast instanceof Ast.Stmt.If) {
+            Ast.Stmt.If statement = (Ast.Stmt.If) ast;
+            int then = statement.getThenStatements().size();
+            return index == 0 ? statement.getCondition()
+                    : index <= then ? statement.getThenStatements().get(index - 1) : statement.getElseStatements().get(index - 1 - then);
+        } else if (ast instanceof Ast.Stmt.For) {
+            Ast.Stmt.For statement = (Ast.Stmt.For) ast;
+            return index == 0 ? statement.getValue() : statement.getStatements().get(index - 1);
+        } else if (ast instanceof Ast.Stmt.While) {
+            Ast.Stmt.While statement = (Ast.Stmt.While) ast;
+            return index == 0 ? statement.getCondition() : statement.getStatements().get(index - 1);
+        } else if (ast instanceof Ast.Stmt.Return) {
+            return ((Ast.Stmt.Return) ast).getValue();
+        } else if (ast instanceof Ast.Expr.Group) {
+            return ((Ast.Expr.Group) ast).getExpression();
+        } else if (ast instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+            return index == 0 ? binary.getLeft() : binary.getRight();
+        } else if (ast instanceof Ast.Expr.Access) {
+            return ((Ast.Expr.Access) ast).getReceiver().get();
+        } else if (ast instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) ast;
+            int receiver = function.getReceiver().isPresent() ? 1 : 0;
+            return index < receiver ? function.getReceiver().get() : function.getArguments().get(index - receiver);
+        }
+        throw new AssertionError(ast.getClass());
+    }
+
+    /**
+     * Adds a node whose children have been added as the given nodes, and
+     * returns its number.
+     */
+    private int add(Ast ast, int[] nodes) {
+        if (ast instanceof Ast.Source) {
+            int fields = ((Ast.Source) ast).getFields().size();
+            return node(Kind.SOURCE, list(nodes, 0, fields), list(nodes, fields, nodes.length), -1);
+        } else if (ast instanceof Ast.Field) {
+            Ast.Field field = (Ast.Field) ast;
+            return node(Kind.FIELD, constant(field.getName()), constant(field.getTypeName()), optional(nodes, 0));
+        } else if (ast instanceof Ast.Method) {
+            Ast.Method method = (Ast.Method) ast;
+            int count = method.getParameters().size();
+            int signature = list(2 * count + 1);
+            lists[signature] = count; // the list holds the parameter count, not its own size
+            for (int i = 0; i < count; i++) {
+                lists[signature + 1 + 2 * i] = constant(method.getParameters().get(i));
+                lists[signature + 2 + 2 * i] = constant(method.getParameterTypeNames().get(i));
+            }
+            lists[signature + 1 + 2 * count] = method.getReturnTypeName().map(this::constant).orElse(-1);
+            return node(Kind.METHOD, constant(method.getName()), signature, list(nodes, 0, nodes.length));
+        } else if (ast instanceof Ast.Stmt.Expression) {
+            return node(Kind.EXPRESSION, nodes[0], -1, -1);
+        } else if (ast instanceof Ast.Stmt.Declaration) {
+            Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) ast;
+            return node(Kind.DECLARATION, constant(declaration.getName()),
+                    declaration.getTypeName().map(this::constant).orElse(-1), optional(nodes, 0));
+        } else if (ast instanceof Ast.Stmt.Assignment) {
+            return node(Kind.ASSIGNMENT, nodes[0], nodes[1], -1);
+        } else if (ast instanceof Ast.Stmt.If) {
+            int then = 1 + ((Ast.Stmt.If) ast).getThenStatements().size();
+            return node(Kind.IF, nodes[0], list(nodes, 1, then), list(nodes, then, nodes.length));
+        } else if (ast instanceof Ast.Stmt.For) {
+            return node(Kind.FOR, constant(((Ast.Stmt.For) ast).getName()), nodes[0], list(nodes, 1, nodes.length));
+        } else if (ast instanceof Ast.Stmt.While) {
+            return node(Kind.WHILE, nodes[0], list(nodes, 1, nodes.length), -1);
+        } else if (ast instanceof Ast.Stmt.Return) {
+            return node(Kind.RETURN, nodes[0], -1, -1);
+        } else if (ast instanceof Ast.Expr.Literal) {
+            return node(Kind.LITERAL, constant(((Ast.Expr.Literal) ast).getLiteral()), -1, -1);
+        } else if (ast instanceof Ast.Expr.Group) {
+            return node(Kind.GROUP, nodes[0], -1, -1);
+        } else if (ast instanceof Ast.Expr.Binary) {
+            return node(Kind.BINARY, constant(((Ast.Expr.Binary) ast).getOperator()), nodes[0], nodes[1]);
+        } else if (ast instanceof Ast.Expr.Access) {
+            return node(Kind.ACCESS, constant(((Ast.Expr.Access) ast).getName()), optional(nodes, 0), -1);
+        } else if (ast instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) ast;
+            int receiver = function.getReceiver().isPresent() ? 1 : 0;
+            return node(Kind.FUNCTION, constant(function.getName()), optional(nodes, receiver - 1), list(nodes, receiver, nodes.length));
+        }
+        throw new AssertionError(ast.getClass());
+    }
+
+    /**
+     * Returns the node at the index, or -1 for an absent optional if the
+     * index is past the nodes.
+     */
+    private static int optional(int[] nodes, int index) {
+        return index >= 0 && index < nodes.length ? nodes[index] : -1;
+    }
+
+    private int node(Kind kind, int a, int b, int c) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            first = Arrays.copyOf(first, size * 2);
+            second = Arrays.copyOf(second, size * 2);
+            third = Arrays.copyOf(third, size * 2);
+        }
+        kinds[size] = (byte) kind.ordinal();
+        first[size] = a;
+        second[size] = b;
+        third[size] = c;
+        return size++;
+    }
+
+    /**
+     * Adds a list of the given size, to be filled in by the caller, and
+     * returns its offset.
+     */
+    private int list(int length) {
+        if (listsSize + length + 1 > lists.length) {
+            lists = Arrays.copyOf(lists, Math.max(lists.length * 2, listsSize + length + 1));
+        }
+        int list = listsSize;
+        lists[list] = length;
+        listsSize += length + 1;
+        return list;
+    }
+
+    private int list(int[] items, int from, int to) {
+        int list = list(to - from);
+        System.arraycopy(items, from, lists, list + 1, to - from);
+        return list;
+    }
+
+    private int constant(Object value) {
+        Integer number = numbers.get(value);
+        if (number == null) {
+            if (constantsSize == constants.length) {
+                constants = Arrays.copyOf(constants, constantsSize * 2);
+            }
+            number = constantsSize;
+            constants[constantsSize++] = value;
+            numbers.put(value, number);
+        }
+        return number;
+    }
+
+    /**
+     * A node being added by {@link #of(Ast.Source)}, with the numbers of its
+     * children added so far.
+     */
+    private static final class Pending {
+
+        private final Ast ast;
+        private final int[] nodes;
+        private int next = 0;
+
+        private Pending(Ast ast) {
+            this.ast = ast;
+            this.nodes = new int[children(ast)];
+        }
+
+    }
+
+}
@@ -0,0 +1,150 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Checks that a {@link FlatAst} holds the same tree as the {@link Ast} it
+ * was built from.
+ */
+final class FlatAstTests {
+
+    /**
+     * Checks that a {@link FlatAst} holds every kind of node, and gives back
+     * an equal AST, whole and as the subtree of each node a visitor is given.
+     */
+    @Test
+    void testFlatAst() {
+        Ast.Source expected = ParserFixtures.parse(ParserFixtures.EVERY_NODE);
+        FlatAst flat = FlatAst.of(expected);
+        Assertions.assertEquals(expected, flat.toSource());
+        Assertions.assertEquals(FlatAst.Kind.SOURCE, flat.kind(flat.root()));
+        NodeCounter counter = new NodeCounter();
+        Assertions.assertEquals(flat.size(), flat.accept(counter, flat.root()));
+        for (int node = 0; node < flat.size(); node++) {
+            if (flat.kind(node) == FlatAst.Kind.BINARY) {
+                Assertions.assertTrue(flat.second(node) < node && flat.third(node) < node);
+                Assertions.assertEquals(1 + flat.accept(counter, flat.second(node)) + flat.accept(counter, flat.third(node)),
+                        flat.accept(counter, node));
+            } else if (flat.kind(node) == FlatAst.Kind.GROUP) {
+                Assertions.assertEquals(1 + flat.accept(counter, flat.first(node)), flat.accept(counter, node));
+            }
+        }
+        String large = LexerBenchmark.source(64 * 1024);
+        Ast.Source parsed = ParserFixtures.parse(large);
+        Assertions.assertEquals(parsed, FlatAst.of(parsed).toSource());
+    }
+
+    /**
+     * Counts the nodes of a tree, which is one per node of a {@link FlatAst}.
+     */
+    private static final class NodeCounter implements Ast.Visitor<Integer> {
+
+        private int statements(List<Ast.Stmt> statements) {
+            int count = 0;
+            for (Ast.Stmt statement : statements) {
+                count += visit(statement);
+            }
+            return count;
+        }
+
+        private int expressions(List<Ast.Expr> expressions) {
+            int count = 0;
+            for (Ast.Expr expr : expressions) {
+                count += visit(expr);
+            }
+            return count;
+        }
+
+        private int optional(Optional<Ast.Expr> expr) {
+            return expr.isPresent() ? visit(expr.get()) : 0;
+        }
+
+        @Override
+        public Integer visit(Ast.Source ast) {
+            int count = 1;
+            for (Ast.Field field : ast.getFields()) {
+                count += visit(field);
+            }
+            for (Ast.Method method : ast.getMethods()) {
+                count += visit(method);
+            }
+            return count;
+        }
+
+        @Override
+        public Integer visit(Ast.Field ast) {
+            return 1 + optional(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Method ast) {
+            return 1 + statements(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Expression ast) {
+            return 1 + visit(ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Declaration ast) {
+            return 1 + optional(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Assignment ast) {
+            return 1 + visit(ast.getReceiver()) + visit(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.If ast) {
+            return 1 + visit(ast.getCondition()) + statements(ast.getThenStatements()) + statements(ast.getElseStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.For ast) {
+            return 1 + visit(ast.getValue()) + statements(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.While ast) {
+            return 1 + visit(ast.getCondition()) + statements(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Return ast) {
+            return 1 + visit(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Literal ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Group ast) {
+            return 1 + visit(ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Binary ast) {
+            return 1 + visit(ast.getLeft()) + visit(ast.getRight());
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Access ast) {
+            return 1 + optional(ast.getReceiver());
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Function ast) {
+            return 1 + optional(ast.getReceiver()) + expressions(ast.getArguments());
+        }
+
+    }
+
+}
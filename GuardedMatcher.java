@@ -0,0 +1,119 @@
+package plc.homework;
+
+import java.util.regex.Pattern;
+
+/**
+ * Matches a {@link Pattern} with a budget, so one input which makes the
+ * pattern backtrack exponentially can't stall the thread matching it.
+ *
+ * The input is wrapped in a {@link CharSequence} which counts calls to {@link
+ * CharSequence#charAt(int)}. Every step of a {@link java.util.regex.Matcher}
+ * reads the input through it, so the count is a measure of the work done; once
+ * it passes the step budget, or the time budget has run out, the wrapper
+ * throws a {@link BudgetExceededException} out of the matcher.
+ */
+public final class GuardedMatcher {
+
+    private static final int CLOCK_INTERVAL = 1024; // steps between checks of the time budget
+
+    private GuardedMatcher() {}
+
+    /**
+     * Returns true if the entire input matches the pattern, or throws a {@link
+     * BudgetExceededException} if that takes more than the given number of
+     * steps ({@code charAt} calls) or nanoseconds.
+     */
+    public static boolean matches(Pattern pattern, CharSequence input, long maxSteps, long maxNanos) {
+        Budget budget = new Budget(maxSteps, System.nanoTime() + maxNanos);
+        return pattern.matcher(new CountingCharSequence(input, budget)).matches();
+    }
+
+    /**
+     * Returns the number of steps matching the entire input takes, with no
+     * budget. This is useful for choosing a step budget from typical inputs.
+     */
+    public static long steps(Pattern pattern, CharSequence input) {
+        Budget budget = new Budget(Long.MAX_VALUE, System.nanoTime() + Long.MAX_VALUE);
+        pattern.matcher(new CountingCharSequence(input, budget)).matches();
+        return budget.steps;
+    }
+
+    /**
+     * Thrown when a match runs out of budget. The match is abandoned, so
+     * whether the input matches is unknown.
+     */
+    public static final class BudgetExceededException extends RuntimeException {
+
+        private final long steps;
+
+        public BudgetExceededException(String message, long steps) {
+            super(message);
+            this.steps = steps;
+        }
+
+        /**
+         * Returns the number of steps taken before the match was stopped.
+         */
+        public long getSteps() {
+            return steps;
+        }
+
+    }
+
+    private static final class Budget {
+
+        private final long maxSteps;
+        private final long deadline;
+        private long steps = 0;
+
+        private Budget(long maxSteps, long deadline) {
+            this.maxSteps = maxSteps;
+            this.deadline = deadline;
+        }
+
+        private void step() {
+            steps++;
+            if (steps > maxSteps) {
+                throw new BudgetExceededException("Exceeded " + maxSteps + " steps.", steps);
+            }
+            if (steps % CLOCK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+                throw new BudgetExceededException("Exceeded the time budget after " + steps + " steps.", steps);
+            }
+        }
+
+    }
+
+    private static final class CountingCharSequence implements CharSequence {
+
+        private final CharSequence input;
+        private final Budget budget;
+
+        private CountingCharSequence(CharSequence input, Budget budget) {
+            this.input = input;
+            this.budget = budget;
+        }
+
+        @Override
+        public int length() {
+            return input.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            budget.step();
+            return input.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new CountingCharSequence(input.subSequence(start, end), budget);
+        }
+
+        @Override
+        public String toString() {
+            return input.toString();
+        }
+
+    }
+
+}
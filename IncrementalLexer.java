@@ -0,0 +1,114 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Re-lexes only the part of a source damaged by an edit, for editors and
+ * watch mode.
+ *
+ * As in {@link ParallelLexer}, a newline is always a token boundary, so the
+ * tokens of a line only depend on that line. After an edit only the lines it
+ * touches are re-lexed: from the start of the line containing the edit to
+ * the first newline after the inserted text, where the new tokens are
+ * guaranteed to be back in sync with the old ones. Every old token after that
+ * point is unchanged apart from its index moving by the size of the edit.
+ */
+public final class IncrementalLexer {
+
+    private IncrementalLexer() {}
+
+    /**
+     * Re-lexes the source after an edit which replaced {@code removed}
+     * characters at {@code offset} with {@code inserted} new ones. The source
+     * is the text after the edit and tokens are the tokens from before it.
+     * Throws a {@link ParseException} if the damaged lines no longer lex.
+     */
+    public static Delta relex(CharSequence source, List<Token> tokens, int offset, int removed, int inserted) {
+        int start = offset;
+        while (start > 0 && source.charAt(start - 1) != '\n' && source.charAt(start - 1) != '\r') {
+            start--;
+        }
+        int end = offset + inserted;
+        while (end < source.length() && source.charAt(end) != '\n' && source.charAt(end) != '\r') {
+            end++;
+        }
+        end = Math.min(end + 1, source.length());
+        int shift = inserted - removed;
+        int first = search(tokens, start);
+        int last = search(tokens, end - shift);
+        return new Delta(first, last - first, new Lexer(source, start, end).lex(), shift);
+    }
+
+    /**
+     * Returns the position of the first token with an index of at least the
+     * given index, or the number of tokens if there is none.
+     */
+    private static int search(List<Token> tokens, int index) {
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (tokens.get(middle).getIndex() < index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The change to a token list caused by an edit: {@link #getRemoved()}
+     * tokens starting at {@link #getStart()} are replaced by {@link
+     * #getInserted()}, and the index of every token after them moves by
+     * {@link #getShift()}.
+     */
+    public static final class Delta {
+
+        private final int start;
+        private final int removed;
+        private final List<Token> inserted;
+        private final int shift;
+
+        public Delta(int start, int removed, List<Token> inserted, int shift) {
+            this.start = start;
+            this.removed = removed;
+            this.inserted = inserted;
+            this.shift = shift;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getRemoved() {
+            return removed;
+        }
+
+        public List<Token> getInserted() {
+            return inserted;
+        }
+
+        public int getShift() {
+            return shift;
+        }
+
+        /**
+         * Returns the new token list, given the tokens from before the edit.
+         * This copies (and for shifted tokens, recreates) the whole list, so
+         * callers which can work from the delta directly should.
+         */
+        public List<Token> apply(List<Token> tokens) {
+            List<Token> result = new ArrayList<>(tokens.size() - removed + inserted.size());
+            result.addAll(tokens.subList(0, start));
+            result.addAll(inserted);
+            for (Token token : tokens.subList(start + removed, tokens.size())) {
+                result.add(shift == 0 ? token : new Token(token.getType(), token.getLiteral(), token.getIndex() + shift));
+            }
+            return result;
+        }
+
+    }
+
+}
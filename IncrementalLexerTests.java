@@ -0,0 +1,106 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Checks that {@link IncrementalLexer#relex} describes exactly the change
+ * between the tokens before an edit and those of a full re-lex after it.
+ */
+final class IncrementalLexerTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testRelex(String test, String before, int offset, int removed, String inserted) {
+        test(before, offset, removed, inserted);
+    }
+
+    private static Stream<Arguments> testRelex() {
+        return Stream.of(
+                Arguments.of("Replace", "LET x = 1;\nLET y = 2;\nLET z = 3;\n", 15, 1, "yy"),
+                Arguments.of("Join Lines", "LET x = 1;\nLET y = 2;\nLET z = 3;\n", 10, 1, ""),
+                Arguments.of("Split Line", "LET x = 1;\nLET y = 2;\n", 5, 0, "\n"),
+                Arguments.of("Split Token", "LET xyz = 1;\nLET y = 2;\n", 5, 0, "\n"),
+                Arguments.of("Join CRLF", "a b\r\nc d\r\ne f", 3, 2, ""),
+                Arguments.of("Split CRLF", "a b\r\nc d\r\ne f", 4, 0, "x\r\ny"),
+                Arguments.of("Between CR LF", "a b\r\nc d\r\ne f", 4, 0, "\r\n"),
+                Arguments.of("Start", "LET x = 1;\nLET y = 2;\n", 0, 0, "x "),
+                Arguments.of("Remove Start", "LET x = 1;\nLET y = 2;\n", 0, 4, ""),
+                Arguments.of("End", "LET x = 1;\nLET y = 2;", 21, 0, "\nLET z = 3;"),
+                Arguments.of("Remove End", "LET x = 1;\nLET y = 2;\n", 10, 11, ""),
+                Arguments.of("Empty", "", 0, 0, "LET x = 1;"),
+                Arguments.of("Remove All", "LET x = 1;\nLET y = 2;\n", 0, 22, ""),
+                Arguments.of("Inside String", "print(\"a b c\");\nx;\n", 9, 1, " d e "),
+                Arguments.of("Open String", "x;\n\"a\" + \"b\";\ny;\n", 5, 1, ""),
+                Arguments.of("Operator", "x = y;\nz;\n", 2, 0, "="),
+                Arguments.of("Several Lines", "a;\nb;\nc;\nd;\ne;\n", 4, 6, "x;\ny;\nz;\nw;\n")
+        );
+    }
+
+    /**
+     * Checks random edits of random sources, including edits which leave the
+     * source invalid, which must fail where a full re-lex fails.
+     */
+    @Test
+    void testRandomEdits() {
+        Random random = new Random(0);
+        String[] pieces = {"x", "abc", "1", "2.5", "'c'", "\"s t\"", "\"\"", "=", "==", "(", ")", ";", " ", "  ", "\n", "\r\n", "\r", "\"", "'"};
+        for (int i = 0; i < 20_000; i++) {
+            String before = random(random, pieces, 12);
+            try {
+                new Lexer(before).lex();
+            } catch (ParseException e) {
+                continue;
+            }
+            int offset = random.nextInt(before.length() + 1);
+            int removed = random.nextInt(before.length() - offset + 1);
+            test(before, offset, removed, random(random, pieces, 3));
+        }
+    }
+
+    private static String random(Random random, String[] pieces, int count) {
+        StringBuilder source = new StringBuilder();
+        for (int i = random.nextInt(count + 1); i > 0; i--) {
+            source.append(pieces[random.nextInt(pieces.length)]);
+        }
+        return source.toString();
+    }
+
+    private static void test(String before, int offset, int removed, String inserted) {
+        List<Token> tokens = new Lexer(before).lex();
+        String after = before.substring(0, offset) + inserted + before.substring(offset + removed);
+        String message = before + " -> " + after;
+        List<Token> expected;
+        try {
+            expected = new Lexer(after).lex();
+        } catch (ParseException e) {
+            ParseException actual = Assertions.assertThrows(ParseException.class,
+                    () -> IncrementalLexer.relex(after, tokens, offset, removed, inserted.length()), message);
+            Assertions.assertEquals(e.getIndex(), actual.getIndex(), message);
+            return;
+        }
+        IncrementalLexer.Delta delta = IncrementalLexer.relex(after, tokens, offset, removed, inserted.length());
+        int start = delta.getStart();
+        int end = start + delta.getInserted().size();
+        Assertions.assertEquals(inserted.length() - removed, delta.getShift(), message);
+        Assertions.assertEquals(tokens.subList(0, start), expected.subList(0, start), message);
+        Assertions.assertEquals(expected.subList(start, end), delta.getInserted(), message);
+        List<Token> rest = tokens.subList(start + delta.getRemoved(), tokens.size());
+        Assertions.assertEquals(expected.size() - end, rest.size(), message);
+        for (int i = 0; i < rest.size(); i++) {
+            Token token = rest.get(i);
+            Assertions.assertTrue(token.getIndex() >= offset + removed, message);
+            Assertions.assertEquals(expected.get(end + i),
+                    new Token(token.getType(), token.getLiteral(), token.getIndex() + delta.getShift()), message);
+        }
+        Assertions.assertEquals(expected, delta.apply(tokens), message);
+    }
+
+}
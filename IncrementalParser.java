@@ -0,0 +1,258 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Re-parses only the part of a source damaged by an edit, for editors and
+ * language servers, reusing every untouched {@link Ast.Method} and {@link
+ * Ast.Stmt} from the previous parse.
+ *
+ * The AST has no positions, so the parser keeps the token span of each
+ * method and of each statement in its body. Given the {@link
+ * IncrementalLexer.Delta} of an edit, it re-parses the smallest run of
+ * statements of a single method which covers the changed tokens, and builds
+ * a new {@link Ast.Method} holding the new statements and the old ones around
+ * them. If the statements no longer line up with the old boundaries (for
+ * example the edit added an {@code END}) it re-parses the run of methods
+ * covering the edit instead, and if that fails too, or the edit touches the
+ * fields, the whole source. Every statement ends with a {@code ;} or {@code
+ * END} and the parser never looks past it, so the statements before the
+ * edit are unaffected and this gives the same AST as parsing the whole source.
+ *
+ * Errors always come from a full parse, so they are the same as {@link
+ * Parser#parseSource()}; the edit after an error is parsed in full.
+ */
+public final class IncrementalParser {
+
+    private static final int LOOKAHEAD = 3; // tokens past a method or statement the parser may look at
+
+    private Ast.Source source;
+    private final List<Span> spans = new ArrayList<>();
+    private int reparsed = 0;
+
+    /**
+     * Parses the whole source, replacing any previous state.
+     */
+    public Ast.Source parse(List<Token> tokens) throws ParseException {
+        source = null;
+        spans.clear();
+        reparsed = tokens.size();
+        Recorder recorder = new Recorder(0);
+        Ast.Source result = new Parser(TokenBuffer.of(tokens), recorder).parseSource();
+        spans.addAll(recorder.spans);
+        source = result;
+        return result;
+    }
+
+    /**
+     * Re-parses the source after an edit, given the tokens after the edit and
+     * the delta which produced them from the tokens of the last parse.
+     */
+    public Ast.Source reparse(List<Token> tokens, IncrementalLexer.Delta delta) throws ParseException {
+        if (source == null) {
+            return parse(tokens);
+        }
+        int start = delta.getStart();
+        int end = start + delta.getRemoved();
+        int shift = delta.getInserted().size() - delta.getRemoved();
+        if (spans.isEmpty()) {
+            return parse(tokens);
+        }
+        // the methods the edit touches, or the last one if it is at the end
+        int first = 0;
+        while (first + 1 < spans.size() && spans.get(first).end <= start) {
+            first++;
+        }
+        int last = first;
+        while (last + 1 < spans.size() && spans.get(last + 1).start < end) {
+            last++;
+        }
+        if (spans.get(first).start > start || spans.get(last).end < end) {
+            return parse(tokens); // the edit touches the fields or what follows the methods
+        }
+        if ((first == last && reparseStatements(tokens, first, start, end, shift))
+                || reparseMethods(tokens, first, last, shift)) {
+            return source;
+        }
+        return parse(tokens);
+    }
+
+    /**
+     * Returns the current AST, or null if the last parse failed.
+     */
+    public Ast.Source getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the number of tokens parsed by the last call to {@link
+     * #parse(List)} or {@link #reparse(List, IncrementalLexer.Delta)}.
+     */
+    public int getReparsedTokens() {
+        return reparsed;
+    }
+
+    /**
+     * Re-parses the statements of the method which cover the edit, returning
+     * false if they don't cover it or no longer parse to the same span.
+     */
+    private boolean reparseStatements(List<Token> tokens, int method, int start, int end, int shift) {
+        Span span = spans.get(method);
+        int[] bounds = span.statements;
+        int count = bounds.length - 1;
+        if (count == 0 || start < span.start + bounds[0] || end > span.start + bounds[count]) {
+            return false; // the edit touches the header, the END or an empty body
+        }
+        int first = 0;
+        while (first + 1 < count && span.start + bounds[first + 1] <= start) {
+            first++;
+        }
+        int last = first;
+        while (last + 1 < count && span.start + bounds[last + 1] < end) {
+            last++;
+        }
+        int from = span.start + bounds[first];
+        int to = span.start + bounds[last + 1] + shift;
+        Recorder recorder = new Recorder(from);
+        Parser parser = new Parser(window(tokens, from, to), recorder);
+        List<Ast.Stmt> parsed;
+        try {
+            parsed = parser.parseStatements(to - from);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        if (parser.position() != to - from) {
+            return false;
+        }
+        reparsed = to - from;
+        Ast.Method old = source.getMethods().get(method);
+        List<Ast.Stmt> statements = new ArrayList<>(count - (last - first + 1) + parsed.size());
+        statements.addAll(old.getStatements().subList(0, first));
+        statements.addAll(parsed);
+        statements.addAll(old.getStatements().subList(last + 1, count));
+        int[] updated = new int[statements.size() + 1];
+        System.arraycopy(bounds, 0, updated, 0, first + 1);
+        for (int i = 0; i < parsed.size(); i++) {
+            updated[first + i + 1] = from + recorder.statements[2 * i + 1] - span.start;
+        }
+        for (int i = last + 1; i < count; i++) {
+            updated[i - last + first + parsed.size()] = bounds[i + 1] + shift;
+        }
+        List<Ast.Method> methods = new ArrayList<>(source.getMethods());
+        methods.set(method, new Ast.Method(old.getName(), old.getParameters(), old.getParameterTypeNames(), old.getReturnTypeName(), statements));
+        spans.set(method, new Span(span.start, span.end + shift, updated));
+        shift(method + 1, shift);
+        source = new Ast.Source(source.getFields(), methods);
+        return true;
+    }
+
+    /**
+     * Re-parses the given methods, returning false if they no longer parse to
+     * the same span.
+     */
+    private boolean reparseMethods(List<Token> tokens, int first, int last, int shift) {
+        int from = spans.get(first).start;
+        int to = spans.get(last).end + shift;
+        Recorder recorder = new Recorder(from);
+        Parser parser = new Parser(window(tokens, from, to), recorder);
+        List<Ast.Method> parsed = new ArrayList<>();
+        try {
+            parser.parseMethods(parsed, to - from);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        if (parser.position() != to - from) {
+            return false;
+        }
+        reparsed = to - from;
+        List<Ast.Method> methods = new ArrayList<>(source.getMethods().size() - (last - first + 1) + parsed.size());
+        methods.addAll(source.getMethods().subList(0, first));
+        methods.addAll(parsed);
+        methods.addAll(source.getMethods().subList(last + 1, source.getMethods().size()));
+        spans.subList(first, last + 1).clear();
+        spans.addAll(first, recorder.spans);
+        shift(first + parsed.size(), shift);
+        source = new Ast.Source(source.getFields(), methods);
+        return true;
+    }
+
+    /**
+     * Moves the spans of the methods from the given one on by the given
+     * number of tokens.
+     */
+    private void shift(int method, int shift) {
+        if (shift != 0) {
+            for (int i = method; i < spans.size(); i++) {
+                Span span = spans.get(i);
+                spans.set(i, new Span(span.start + shift, span.end + shift, span.statements));
+            }
+        }
+    }
+
+    /**
+     * Returns the tokens from {@code from} to {@code to}, and the few after
+     * them which the parser may look at.
+     */
+    private static TokenBuffer window(List<Token> tokens, int from, int to) {
+        return TokenBuffer.of(tokens.subList(from, Math.min(to + LOOKAHEAD, tokens.size())));
+    }
+
+    /**
+     * The token span of a method. Statement {@code i} of its body spans from
+     * {@code statements[i]} to {@code statements[i + 1]}, relative to the
+     * start of the method.
+     */
+    private static final class Span {
+
+        private final int start;
+        private final int end;
+        private final int[] statements;
+
+        private Span(int start, int end, int[] statements) {
+            this.start = start;
+            this.end = end;
+            this.statements = statements;
+        }
+
+    }
+
+    /**
+     * Collects the spans reported by a {@link Parser} parsing tokens which
+     * start at the given position.
+     */
+    private static final class Recorder implements Parser.Listener {
+
+        private final int offset;
+        private final List<Span> spans = new ArrayList<>();
+        private int[] statements = new int[16]; // start and end of each statement of the current method
+        private int size = 0;
+
+        private Recorder(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void method(int start, int end) {
+            int[] bounds = new int[size / 2 + 1];
+            bounds[0] = size == 0 ? 0 : statements[0] - start;
+            for (int i = 0; i < size / 2; i++) {
+                bounds[i + 1] = statements[2 * i + 1] - start;
+            }
+            spans.add(new Span(start + offset, end + offset, bounds));
+            size = 0;
+        }
+
+        @Override
+        public void statement(int start, int end) {
+            if (size + 2 > statements.length) {
+                statements = Arrays.copyOf(statements, statements.length * 2);
+            }
+            statements[size++] = start;
+            statements[size++] = end;
+        }
+
+    }
+
+}
@@ -0,0 +1,52 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * Checks that {@link IncrementalParser} produces the same AST as parsing the
+ * edited source.
+ */
+final class IncrementalParserTests {
+
+    /**
+     * Checks that only the edited statement is re-parsed and the other
+     * methods and statements are reused, and that an error is reported at
+     * the same index as a full parse.
+     */
+    @Test
+    void testIncrementalParser() {
+        String source = ParserFixtures.methods(20, i ->
+                "    LET y: Integer = x * 2;\n"
+                + "    WHILE x > y DO x = x - 1; END\n"
+                + "    RETURN x + y;\n");
+        List<Token> tokens = new Lexer(source).lex();
+        IncrementalParser parser = new IncrementalParser();
+        Ast.Source before = parser.parse(tokens);
+
+        int offset = source.indexOf("x = x - 1", source.indexOf("method10"));
+        String edited = source.substring(0, offset) + "x = f(x) - 2" + source.substring(offset + "x = x - 1".length());
+        IncrementalLexer.Delta delta = IncrementalLexer.relex(edited, tokens, offset, "x = x - 1".length(), "x = f(x) - 2".length());
+        List<Token> editedTokens = delta.apply(tokens);
+        Ast.Source after = parser.reparse(editedTokens, delta);
+        Assertions.assertEquals(new Parser(editedTokens).parseSource(), after);
+        Assertions.assertTrue(parser.getReparsedTokens() < 30, "re-parsed " + parser.getReparsedTokens() + " tokens");
+        for (int i = 0; i < 20; i++) {
+            if (i != 10) {
+                Assertions.assertSame(before.getMethods().get(i), after.getMethods().get(i));
+            }
+        }
+        Assertions.assertSame(before.getMethods().get(10).getStatements().get(0), after.getMethods().get(10).getStatements().get(0));
+
+        String invalid = edited.replace("RETURN x + y;\nEND\nDEF method15", "RETURN x +;\nEND\nDEF method15");
+        int error = edited.indexOf("RETURN x + y;\nEND\nDEF method15") + "RETURN x +".length();
+        IncrementalLexer.Delta invalidDelta = IncrementalLexer.relex(invalid, editedTokens, error, 2, 0);
+        List<Token> invalidTokens = invalidDelta.apply(editedTokens);
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(invalidTokens).parseSource());
+        ParseException actual = Assertions.assertThrows(ParseException.class, () -> parser.reparse(invalidTokens, invalidDelta));
+        Assertions.assertEquals(expected.getIndex(), actual.getIndex());
+    }
+
+}
@@ -0,0 +1,142 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * Shares the literals of tokens with the same spelling, so large token lists
+ * and ASTs hold one String per distinct name instead of one per occurrence.
+ *
+ * Operators and reserved words are numbered words shared by every interner
+ * (see {@link #word(CharSequence, int, int)}). These are the same instances
+ * as string literals in the source code, so the parser can compare them by
+ * identity. Other identifiers are shared per interner, which is normally one
+ * per lexer.
+ */
+public final class Interner {
+
+    private static final String[] RESERVED = {"LET", "DEF", "DO", "END", "IF", "ELSE", "FOR", "IN",
+            "WHILE", "RETURN", "TRUE", "FALSE", "NIL", "AND", "OR"};
+    private static final String[] COMPARISONS = {"<=", ">=", "==", "!="};
+
+    /**
+     * The shared words, by number. 0 is not a word, 1-128 are the single
+     * ASCII characters, followed by the comparison operators and the
+     * reserved words.
+     */
+    private static final String[] WORDS = new String[1 + 128 + COMPARISONS.length + RESERVED.length];
+    private static final int[][] BUCKETS = new int[128][]; // multi-character words by first char
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            WORDS[1 + c] = String.valueOf(c).intern();
+        }
+        int word = 129;
+        for (String literal : COMPARISONS) {
+            WORDS[word++] = literal;
+        }
+        for (String literal : RESERVED) {
+            WORDS[word++] = literal;
+        }
+        for (int i = 129; i < WORDS.length; i++) {
+            int[] bucket = BUCKETS[WORDS[i].charAt(0)];
+            bucket = bucket == null ? new int[1] : Arrays.copyOf(bucket, bucket.length + 1);
+            bucket[bucket.length - 1] = i;
+            BUCKETS[WORDS[i].charAt(0)] = bucket;
+        }
+    }
+
+    private String[] table = new String[256];
+    private int size = 0;
+
+    /**
+     * Returns the number of the word between start and end, or 0 if it is not
+     * an operator or reserved word. Numbers fit in an unsigned byte.
+     */
+    public static int word(CharSequence source, int start, int end) {
+        if (end <= start || source.charAt(start) >= 128) {
+            return 0;
+        }
+        char first = source.charAt(start);
+        if (end - start == 1) {
+            return 1 + first;
+        }
+        if (BUCKETS[first] != null) {
+            for (int word : BUCKETS[first]) {
+                if (regionMatches(WORDS[word], source, start, end)) {
+                    return word;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the literal of a word number.
+     */
+    public static String word(int word) {
+        return WORDS[word];
+    }
+
+    /**
+     * Returns the shared literal for the characters between start and end,
+     * adding it if this is its first occurrence.
+     */
+    public String intern(CharSequence source, int start, int end) {
+        int word = word(source, start, end);
+        if (word != 0) {
+            return WORDS[word];
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            String literal = table[slot];
+            if (literal == null) {
+                literal = source.subSequence(start, end).toString();
+                table[slot] = literal;
+                if (++size * 2 > table.length) {
+                    grow();
+                }
+                return literal;
+            }
+            if (literal.hashCode() == hash && regionMatches(literal, source, start, end)) {
+                return literal;
+            }
+        }
+    }
+
+    private void grow() {
+        String[] old = table;
+        table = new String[old.length * 2];
+        int mask = table.length - 1;
+        for (String literal : old) {
+            if (literal != null) {
+                int slot = mix(literal.hashCode()) & mask;
+                while (table[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = literal;
+            }
+        }
+    }
+
+    // spreads the high bits of String.hashCode into the low bits used for slots
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean regionMatches(String literal, CharSequence source, int start, int end) {
+        if (literal.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (literal.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,136 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Checks that {@link Parser#parseSourceLazily()} gives the same AST as
+ * {@link Parser#parseSource()} and the same errors, only later.
+ */
+final class LazyParserTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSameAst(String test, String source) {
+        List<Token> tokens = new Lexer(source).lex();
+        Assertions.assertEquals(new Parser(tokens).parseSource(), new Parser(tokens).parseSourceLazily());
+    }
+
+    private static Stream<Arguments> testSameAst() {
+        return Stream.of(
+                Arguments.of("Every Node", ParserFixtures.EVERY_NODE),
+                Arguments.of("Methods", ParserFixtures.methods(50, i ->
+                        "    LET y: Integer = x * " + i + ";\n"
+                        + "    WHILE x > y DO x = x - 1; END\n"
+                        + "    RETURN x + y;\n")),
+                Arguments.of("Nested Blocks", ParserFixtures.methods(3, i ->
+                        "    IF x > 0 DO\n"
+                        + "        FOR item IN list DO\n"
+                        + "            WHILE item > 0 DO item = item - 1; END\n"
+                        + "            IF item == 0 DO RETURN 0; ELSE print(item); END\n"
+                        + "        END\n"
+                        + "    ELSE\n"
+                        + "        WHILE x < 0 DO x = x + 1; END\n"
+                        + "    END\n"
+                        + "    RETURN x;\n")),
+                Arguments.of("Empty Bodies", "DEF f() DO END DEF g() DO END"),
+                Arguments.of("Keyword Member", "DEF f(x: Integer) DO\n  x = obj.END;\n  RETURN x;\nEND\nDEF g() DO RETURN 1; END\n"),
+                Arguments.of("Keyword Names", ParserFixtures.methods(3, i ->
+                        "    x = DO;\n"
+                        + "    obj.DO = END(DO, obj.END);\n"
+                        + "    WHILE DO DO x = obj.END; END\n"
+                        + "    IF END DO RETURN DO; ELSE x = obj.DO.END; END\n"
+                        + "    RETURN END;\n")),
+                Arguments.of("Source", LexerBenchmark.source(16 * 1024))
+        );
+    }
+
+    /**
+     * Checks that an error in a body is only thrown when its statements are
+     * first used, at the same index as eager parsing, and that the other
+     * bodies are unaffected.
+     */
+    @ParameterizedTest
+    @MethodSource
+    void testDeferredError(String test, String source) {
+        List<Token> tokens = new Lexer(source).lex();
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseSource());
+        Ast.Source lazy = new Parser(tokens).parseSourceLazily();
+        Assertions.assertEquals(1, lazy.getMethods().get(0).getStatements().size());
+        ParseException actual = Assertions.assertThrows(ParseException.class, () -> lazy.getMethods().get(1).getStatements().size());
+        Assertions.assertEquals(expected.getIndex(), actual.getIndex());
+    }
+
+    private static Stream<Arguments> testDeferredError() {
+        return Stream.of(
+                Arguments.of("Missing Operand", "DEF f() DO RETURN 1; END\nDEF g() DO RETURN 1 +; END"),
+                Arguments.of("Missing Semicolon", "DEF f() DO RETURN 1; END\nDEF g() DO x = 1 RETURN x; END"),
+                Arguments.of("Nested", "DEF f() DO RETURN 1; END\nDEF g() DO IF x DO WHILE y DO z = ; END END END"),
+                Arguments.of("Stops Early", "DEF f() DO RETURN 1; END\nDEF g() DO x; y END")
+        );
+    }
+
+    /**
+     * Checks that a body whose {@code DO} and {@code END} don't balance, or
+     * only seem to because of names like {@code END}, is reported by the lazy
+     * parse itself, at the same index as eager parsing.
+     */
+    @Test
+    void testUnbalancedBody() {
+        String[] sources = {
+                "DEF f() DO IF x DO y; END\n",
+                "DEF f() DO x = obj.END; y END\nDEF g() DO END",
+                "DEF f() DO x = DO END\nDEF g() DO END",
+                "DEF f() DO x = obj.END END\nDEF g() DO END",
+        };
+        for (String source : sources) {
+            List<Token> tokens = new Lexer(source).lex();
+            ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseSource(), source);
+            ParseException actual = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseSourceLazily(), source);
+            Assertions.assertEquals(expected.getIndex(), actual.getIndex(), source);
+        }
+    }
+
+    /**
+     * Checks that the tokens are no longer reachable from the AST once every
+     * body has been parsed.
+     */
+    @Test
+    void testTokensReleased() {
+        TokenBuffer tokens = new Lexer(ParserFixtures.EVERY_NODE).lexBuffer();
+        WeakReference<TokenBuffer> reference = new WeakReference<>(tokens);
+        Ast.Source source = new Parser(tokens).parseSourceLazily();
+        tokens = null;
+        for (Ast.Method method : source.getMethods()) {
+            method.getStatements().size();
+        }
+        for (int i = 0; i < 10 && reference.get() != null; i++) {
+            System.gc();
+        }
+        Assertions.assertNull(reference.get());
+        Assertions.assertEquals(ParserFixtures.parse(ParserFixtures.EVERY_NODE), source);
+    }
+
+    /**
+     * Checks that the {@code END} of a method may be followed by another
+     * method, but not by anything else.
+     */
+    @Test
+    void testMethodEnd() {
+        Assertions.assertEquals(3, ParserFixtures.parse("DEF f() DO END\nDEF g() DO END\nDEF h() DO END").getMethods().size());
+        for (String source : new String[] {"DEF f() DO END LET x;", "DEF f() DO END RETURN 1;"}) {
+            List<Token> tokens = new Lexer(source).lex();
+            ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseSource(), source);
+            ParseException lazy = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseSourceLazily(), source);
+            Assertions.assertEquals(expected.getIndex(), lazy.getIndex(), source);
+        }
+    }
+
+}
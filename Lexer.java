@@ -1,7 +1,21 @@
 package plc.project;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * The lexer works through three main functions:
@@ -10,21 +24,87 @@ import java.util.List;
  *  - {@link #lexToken()}, which lexes the next token
  *  - {@link CharStream}, which manages the state of the lexer and literals
  *
+ * Large inputs can be lexed from a {@link Reader} or channel and pulled one
+ * token at a time with {@link #iterator()}, which keeps only a small window of
+ * the input in memory. Files can also be memory mapped with {@link #map(Path)}.
+ *
  * If the lexer fails to parse something (such as an unterminated string) you
  * should throw a {@link ParseException} with an index at the character which is
  * invalid or missing.
  *
  * The {@link #peek(String...)} and {@link #match(String...)} functions are
  * helpers you need to use, they will make the implementation a lot easier.
+ * The lex methods use the {@link CharClass} overloads, which do the same thing
+ * with precompiled classes instead of compiling a regex for every character.
  */
 public final class Lexer {
 
+    private static final CharClass
+            NON_WHITESPACE = CharClass.not(" \b\n\r\t"),
+            IDENTIFIER_START = CharClass.of("A-Za-z_"),
+            IDENTIFIER_PART = CharClass.of("A-Za-z0-9_-"),
+            SIGN = CharClass.of("+-"),
+            DIGIT = CharClass.of("0-9"),
+            DOT = CharClass.of("."),
+            SINGLE_QUOTE = CharClass.of("'"),
+            DOUBLE_QUOTE = CharClass.of("\""),
+            BACKSLASH = CharClass.of("\\"),
+            ESCAPE = CharClass.of("bnrt'\"\\"),
+            CHARACTER_BODY = CharClass.not("'\n\r"),
+            STRING_BODY = CharClass.not("\"\n\r"),
+            NEWLINE = CharClass.of("\n\r"),
+            COMPARISON = CharClass.of("<>!="),
+            EQUALS = CharClass.of("=");
+
     private final CharStream chars;
+    private final LineIndex lines = new LineIndex();
+    private final List<ParseException> errors = new ArrayList<>();
 
-    public Lexer(String input) {
+    public Lexer(CharSequence input) {
         chars = new CharStream(input);
     }
 
+    /**
+     * Lexes only the characters of the input between start and end, with
+     * token indices still relative to the start of the whole input. Used by
+     * {@link ParallelLexer} to lex chunks.
+     */
+    Lexer(CharSequence input, int start, int end) {
+        chars = new CharStream(input, start, end);
+    }
+
+    /**
+     * Lexes the characters of the reader as they are needed. The reader is
+     * not closed.
+     */
+    public Lexer(Reader reader) {
+        chars = new CharStream(reader);
+    }
+
+    /**
+     * Lexes the UTF-8 contents of the channel as they are needed.
+     */
+    public Lexer(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1));
+    }
+
+    /**
+     * Returns a lexer over the memory mapped contents of the file. ASCII
+     * files (nearly all sources) are lexed directly from the mapped bytes and
+     * only token literals are decoded; anything else is decoded as UTF-8 up
+     * front like the string path. Files must be smaller than 2 GB.
+     */
+    public static Lexer map(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (MappedSource.isAscii(buffer)) {
+            return new Lexer(new MappedSource(buffer));
+        }
+        return new Lexer(StandardCharsets.UTF_8.decode(buffer));
+    }
+
     /**
      * Repeatedly lexes the input using {@link #lexToken()}, also skipping over
      * whitespace where appropriate.
@@ -32,23 +112,160 @@ public final class Lexer {
     public List<Token> lex()
     {
         List<Token> tokens = new ArrayList<>();
-        //while(chars.has(0))
-        while(chars.index <= chars.input.length())
-        //while(peek("."))
+        while(skipWhitespace())
+        {
+            tokens.add(lexToken());
+        }
+        return tokens;
+    }
+
+    /**
+     * Lexes the input like {@link #lex()}, but instead of stopping at the
+     * first invalid token it records the error (see {@link #getErrors()}),
+     * skips past the invalid text and keeps going, so one pass finds every
+     * lexical error. The returned tokens are the valid ones.
+     */
+    public List<Token> lexRecovering()
+    {
+        List<Token> tokens = new ArrayList<>();
+        while(skipWhitespace())
         {
-            if(peek("[^ \b\n\r\t]")) // if its not whitespace
+            try
             {
                 tokens.add(lexToken());
             }
-            else
+            catch(ParseException e)
+            {
+                errors.add(e);
+                recover();
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the errors found by {@link #lexRecovering()}, in order.
+     */
+    public List<ParseException> getErrors()
+    {
+        return errors;
+    }
+
+    /**
+     * Skips the rest of an invalid token. Quoted literals are skipped up to
+     * their closing quote (strings and characters can't span lines, so at most
+     * to the end of the line); anything else is skipped up to whitespace.
+     */
+    private void recover()
+    {
+        char last = chars.get(-1);
+        if(last == '\n' || last == '\r')
+        {
+            // a string which ran into a line break, which is the only way a
+            // token can contain one; the next line is a fresh start
+            if(last == '\n' || !(chars.has(0) && chars.get(0) == '\n'))
+            {
+                lines.add(chars.index);
+            }
+            chars.skip();
+            return;
+        }
+        char first = chars.get(-chars.length);
+        boolean quoted = first == '"' || first == '\'';
+        while(chars.has(0) && (quoted ? !peek(NEWLINE) : peek(NON_WHITESPACE)))
+        {
+            char c = chars.get(0);
+            chars.advance();
+            if(quoted && c == first && chars.length > 1)
+            {
+                break;
+            }
+            if(quoted && c == '\\' && chars.has(0) && !peek(NEWLINE))
             {
                 chars.advance();
-                chars.skip();
             }
         }
+        chars.skip();
+    }
+
+    /**
+     * Lexes the input into a {@link TokenBuffer}, which stores the type and
+     * position of each token without creating {@link Token} objects or copying
+     * literals. This needs the whole input, so it is not available when lexing
+     * from a reader.
+     */
+    public TokenBuffer lexBuffer()
+    {
+        if(chars.input == null)
+        {
+            throw new IllegalStateException("lexBuffer requires a CharSequence input");
+        }
+        TokenBuffer tokens = new TokenBuffer(chars.input);
+        chars.buffer = tokens;
+        while(skipWhitespace())
+        {
+            lexToken();
+        }
+        chars.buffer = null;
         return tokens;
     }
 
+    /**
+     * Returns an iterator which lexes one token per call to next, so the
+     * tokens never have to be held in a list. Token indices are still offsets
+     * from the start of the input.
+     */
+    public Iterator<Token> iterator()
+    {
+        return new Iterator<Token>() {
+
+            @Override
+            public boolean hasNext() {
+                return skipWhitespace();
+            }
+
+            @Override
+            public Token next() {
+                if (!skipWhitespace()) {
+                    throw new NoSuchElementException();
+                }
+                return lexToken();
+            }
+
+        };
+    }
+
+    /**
+     * Returns the start of each line lexed so far, for looking up the line and
+     * column of token and {@link ParseException} indices. Lines are recorded
+     * while skipping whitespace, so after {@link #lex()} (or an error) it
+     * covers everything up to the last lexed character.
+     */
+    public LineIndex getLines()
+    {
+        return lines;
+    }
+
+    /**
+     * Skips over whitespace, returning true if there is another token to lex.
+     * Line breaks are always whitespace, so this is also where lines are
+     * recorded.
+     */
+    private boolean skipWhitespace()
+    {
+        while(chars.has(0) && !peek(NON_WHITESPACE))
+        {
+            char c = chars.get(0);
+            if(c == '\n' || c == '\r' && !(chars.has(1) && chars.get(1) == '\n'))
+            {
+                lines.add(chars.index + 1);
+            }
+            chars.advance();
+            chars.skip();
+        }
+        return chars.has(0);
+    }
+
     /**
      * This method determines the type of the next token, delegating to the
      * appropriate lex method. As such, it is best for this method to not change
@@ -59,27 +276,27 @@ public final class Lexer {
      */
     public Token lexToken()
     {
-        if(peek("[A-Za-z_]")) // identifier
+        if(peek(IDENTIFIER_START)) // identifier
         {
             return lexIdentifier();
         }
-        else if(peek("[+-]", "[0-9]")) // number
+        else if(peek(SIGN, DIGIT)) // number
         {
             return lexNumber();
         }
-        else if(peek( "[0-9]")) // number
+        else if(peek(DIGIT)) // number
         {
             return lexNumber();
         }
-        else if(peek("\'")) // character
+        else if(peek(SINGLE_QUOTE)) // character
         {
             return lexCharacter();
         }
-        else if(peek("\"")) // string
+        else if(peek(DOUBLE_QUOTE)) // string
         {
             return lexString();
         }
-        else if(peek("\\\\")) // escape
+        else if(peek(BACKSLASH)) // escape
         {
             lexEscape();
         }
@@ -91,11 +308,11 @@ public final class Lexer {
     }
 
     public Token lexIdentifier() {
-        if(match("[A-Za-z_]"))
+        if(match(IDENTIFIER_START))
         {
-            while(peek("[A-Za-z0-9_-]"))
+            while(peek(IDENTIFIER_PART))
             {
-                match("[A-Za-z0-9_-]");
+                match(IDENTIFIER_PART);
             }
         }
         return chars.emit(Token.Type.IDENTIFIER);
@@ -103,18 +320,18 @@ public final class Lexer {
 
     public Token lexNumber()
     {
-        match("[+-]");
-        while(peek("[0-9]"))
+        match(SIGN);
+        while(peek(DIGIT))
         {
-            match("[0-9]");
+            match(DIGIT);
         }
-        if(peek("\\.", "[0-9]"))
+        if(peek(DOT, DIGIT))
         {
-            if(match("\\."))
+            if(match(DOT))
             {
-                while(peek("[0-9]"))
+                while(peek(DIGIT))
                 {
-                    match("[0-9]");
+                    match(DIGIT);
                 }
                 return chars.emit(Token.Type.DECIMAL);
             }
@@ -124,21 +341,21 @@ public final class Lexer {
 
     public Token lexCharacter()
     {
-        if(match("\'"))
+        if(match(SINGLE_QUOTE))
         {
-            if (match("\\\\"))
+            if (match(BACKSLASH))
             {
-                if (match("[bnrt'\"\\\\]"))
+                if (match(ESCAPE))
                 {
-                    if (match("\'"))
+                    if (match(SINGLE_QUOTE))
                     {
                         return chars.emit(Token.Type.CHARACTER);
                     }
                 }
             }
-            if (match("[^'\n\r]"))
+            if (match(CHARACTER_BODY))
             {
-                if (match("'"))
+                if (match(SINGLE_QUOTE))
                 {
                     return chars.emit(Token.Type.CHARACTER);
                 }
@@ -151,22 +368,22 @@ public final class Lexer {
 
     public Token lexString()
     {
-        match("\"");
-        while(match("[^\"\n\r]"))
+        match(DOUBLE_QUOTE);
+        while(match(STRING_BODY))
         {
-            if(match("[\n\r]"))
+            if(match(NEWLINE))
             {
                 throw new ParseException("invalid escape", chars.index);
             }
-            if(match("\\\\"))
+            if(match(BACKSLASH))
             {
-                if(!match("[bnrt'\"\\\\]"))
+                if(!match(ESCAPE))
                 {
                     throw new ParseException("invalid escape", chars.index);
                 }
             }
         }
-        if (match("\""))
+        if (match(DOUBLE_QUOTE))
         {
             return chars.emit(Token.Type.STRING);
         }
@@ -178,9 +395,9 @@ public final class Lexer {
 
     public void lexEscape()
     {
-        if (match("\\\\"))
+        if (match(BACKSLASH))
         {
-            if (match("[bnrt\'\"\\\\]"))
+            if (match(ESCAPE))
             {
                 return;
             }
@@ -191,9 +408,9 @@ public final class Lexer {
     public Token lexOperator()
     {
 
-        if (match("[<>!=]"))
+        if (match(COMPARISON))
         {
-            if (match("="))
+            if (match(EQUALS))
             {
                 return chars.emit(Token.Type.OPERATOR);
             }
@@ -202,7 +419,7 @@ public final class Lexer {
                 return chars.emit(Token.Type.OPERATOR);
             }
         }
-        match(".");
+        match(CharClass.ANY);
         return chars.emit(Token.Type.OPERATOR);
     }
 
@@ -241,6 +458,51 @@ public final class Lexer {
         return peek;
     }
 
+    /**
+     * Returns true if the next character is in the given class. This is the
+     * precompiled equivalent of {@link #peek(String...)} with one pattern and
+     * is what the lex methods use, since it does not allocate.
+     */
+    public boolean peek(CharClass first)
+    {
+        return chars.has(0) && first.test(chars.get(0));
+    }
+
+    /**
+     * Returns true if the next two characters are in the given classes.
+     */
+    public boolean peek(CharClass first, CharClass second)
+    {
+        return chars.has(1) && first.test(chars.get(0)) && second.test(chars.get(1));
+    }
+
+    /**
+     * As {@link #match(String...)}, for a single {@link CharClass}.
+     */
+    public boolean match(CharClass first)
+    {
+        boolean peek = peek(first);
+        if(peek)
+        {
+            chars.advance();
+        }
+        return peek;
+    }
+
+    /**
+     * As {@link #match(String...)}, for two {@link CharClass}es.
+     */
+    public boolean match(CharClass first, CharClass second)
+    {
+        boolean peek = peek(first, second);
+        if(peek)
+        {
+            chars.advance();
+            chars.advance();
+        }
+        return peek;
+    }
+
     /**
      * A helper class maintaining the input string, current index of the char
      * stream, and the current length of the token being matched.
@@ -248,25 +510,90 @@ public final class Lexer {
      * You should rely on peek/match for state management in nearly all cases.
      * The only field you need to access is {@link #index} for any {@link
      * ParseException} which is thrown.
+     *
+     * When reading from a {@link Reader} the stream keeps a sliding window of
+     * the input, starting at the current token. The window only grows if a
+     * single token is longer than it, so memory does not depend on the size of
+     * the input.
      */
     public static final class CharStream {
 
-        private final String input; // the source string
+        private static final int WINDOW = 8192;
+
+        private final CharSequence input; // the source string, null when reading
+        private final int end; // position after the last char to lex of input
+        private final Reader reader; // the source reader, null for strings
+        private char[] window; // buffered characters of the reader
+        private CharBuffer windowView; // the window as a CharSequence
+        private int windowStart = 0; // position of window[0] within source
+        private int windowEnd = 0; // position after the last buffered char
         private int index = 0; // position within source
         private int length = 0; // size of current token
+        private TokenBuffer buffer = null; // where tokens go in lexBuffer
+        private final Interner interner = new Interner();
 
-        public CharStream(String input) {
+        public CharStream(CharSequence input) {
+            this(input, 0, input.length());
+        }
+
+        public CharStream(CharSequence input, int start, int end) {
             this.input = input;
+            this.end = end;
+            this.reader = null;
+            this.index = start;
+        }
+
+        public CharStream(Reader reader) {
+            this.input = null;
+            this.end = 0;
+            this.reader = reader;
+            this.window = new char[WINDOW];
+            this.windowView = CharBuffer.wrap(window);
         }
 
         // checks if input has offset characters remaining "Ask has before get!"
         public boolean has(int offset) {
-            return index + offset < input.length();
+            if (input != null) {
+                return index + offset < end;
+            }
+            return index + offset < windowEnd || fill(index + offset);
         }
 
         // returns char at offset position "Ask has before get!"
         public char get(int offset) {
-            return input.charAt(index + offset);
+            if (input != null) {
+                return input.charAt(index + offset);
+            }
+            return window[index + offset - windowStart];
+        }
+
+        /**
+         * Reads from the reader until the given position is buffered, first
+         * dropping everything before the current token. Returns false if the
+         * input ends before that position.
+         */
+        private boolean fill(int position) {
+            int tokenStart = index - length;
+            if (tokenStart > windowStart) {
+                System.arraycopy(window, tokenStart - windowStart, window, 0, windowEnd - tokenStart);
+                windowStart = tokenStart;
+            }
+            try {
+                while (position >= windowEnd) {
+                    if (windowEnd - windowStart == window.length) {
+                        window = Arrays.copyOf(window, window.length * 2);
+                        windowView = CharBuffer.wrap(window);
+                    }
+                    int read = reader.read(window, windowEnd - windowStart, window.length - (windowEnd - windowStart));
+                    if (read < 0) {
+                        return false;
+                    }
+                    windowEnd += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
         }
 
         // moves to the next char position in the input
@@ -280,11 +607,30 @@ public final class Lexer {
             length = 0;
         }
 
-        // instantiates the current token
+        // instantiates the current token, or adds it to the buffer in
+        // lexBuffer (returning null)
         public Token emit(Token.Type type) {
             int start = index - length;
             skip();
-            return new Token(type, input.substring(start, index), start);
+            if (buffer != null) {
+                buffer.add(type, start, index - start);
+                return null;
+            }
+            return new Token(type, literal(type, start, index), start);
+        }
+
+        /**
+         * Returns the literal between start and end. Identifiers and operators
+         * are shared through the {@link Interner}, so only their first
+         * occurrence (and other kinds of tokens) copy text from the input.
+         */
+        private String literal(Token.Type type, int start, int end) {
+            CharSequence source = input != null ? input : windowView;
+            int offset = input != null ? 0 : windowStart;
+            if (type == Token.Type.IDENTIFIER || type == Token.Type.OPERATOR) {
+                return interner.intern(source, start - offset, end - offset);
+            }
+            return source.subSequence(start - offset, end - offset).toString();
         }
 
     }
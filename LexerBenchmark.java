@@ -0,0 +1,375 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A small throughput benchmark for the lexer, run with {@code main}. Sizes
+ * (in KB) can be passed as arguments, otherwise a few defaults are used.
+ * Sizes above {@value #LARGE} KB only compare reading the file with {@link
+ * Lexer#map(Path)} against reading it into a string, since the other passes
+ * hold the whole source and every token in memory; the file is written in
+ * chunks, so those sizes can go up to 1048576 (1 GB), though reading that
+ * into a string needs a heap of a few GB ({@code -Xmx4g}).
+ *
+ * There is no benchmarking library in this project, so each measurement is
+ * a few warm up runs followed by timed runs with {@link System#nanoTime()};
+ * numbers are only meant for comparing paths against each other on the same
+ * machine.
+ */
+public final class LexerBenchmark {
+
+    private static final int WARMUP = 3;
+    private static final int RUNS = 5;
+    private static final int LARGE = 64 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = args.length == 0 ? new int[] {1, 64, 1024, 8192} : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        System.out.println("DFA: " + DfaLexer.describe());
+        for (int size : sizes) {
+            System.out.println("== " + size + " KB ==");
+            if (size > LARGE) {
+                file(size, 1, 1);
+                continue;
+            }
+            String input = source(size * 1024);
+            if (!new RegexLexer(input).lex().equals(new Lexer(input).lex())) {
+                throw new AssertionError("RegexLexer and Lexer disagree");
+            }
+            report("lex (regex)", input.length(), () -> new RegexLexer(input).lex());
+            report("lex (CharClass)", input.length(), () -> new Lexer(input).lex());
+            report("lex (DFA)", input.length(), () -> new DfaLexer(input).lex());
+            report("lex (recovering)", input.length(), () -> new Lexer(input).lexRecovering());
+            report("lex (parallel, " + ForkJoinPool.commonPool().getParallelism() + " threads)", input.length(), () -> ParallelLexer.lex(input));
+            System.out.printf("%-32s %10.2f bytes/char%n", "lex allocation", (double) allocated(() -> count(new Lexer(input))) / input.length());
+            lookups(input);
+            report("char classify (regex)", input.length(), () -> classifyRegex(input));
+            report("char classify (CharClass)", input.length(), () -> classifyCharClass(input));
+            file(size, WARMUP, RUNS);
+        }
+    }
+
+    /**
+     * Writes a source of the given size (in KB) to a temporary file and
+     * compares lexing it through {@link #readString(Path)} and {@link
+     * #map(Path)}, without holding the source in memory to write it.
+     */
+    private static void file(int size, int warmup, int runs) throws IOException {
+        Path file = Files.createTempFile("benchmark", ".plc");
+        try {
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+                source(writer, size * 1024L);
+            }
+            long chars = Files.size(file);
+            report("file (readString)", chars, warmup, runs, () -> count(readString(file)));
+            report("file (map)", chars, warmup, runs, () -> count(map(file)));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static Lexer readString(Path file) {
+        try {
+            return new Lexer(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Lexer map(Path file) {
+        try {
+            return Lexer.map(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Counts tokens through {@link Lexer#iterator()}, so very large files do
+     * not also measure the cost of holding every token.
+     */
+    private static int count(Lexer lexer) {
+        int count = 0;
+        Iterator<Token> tokens = lexer.iterator();
+        while (tokens.hasNext()) {
+            tokens.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Prints the average cost of looking up the line and column of every token
+     * through {@link Lexer#getLines()}.
+     */
+    private static void lookups(String input) {
+        Lexer lexer = new Lexer(input);
+        List<Token> tokens = lexer.lex();
+        LineIndex lines = lexer.getLines();
+        int[] sum = new int[1];
+        Runnable task = () -> {
+            for (Token token : tokens) {
+                sum[0] += lines.getLine(token.getIndex()) + lines.getColumn(token.getIndex());
+            }
+        };
+        for (int i = 0; i < WARMUP; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            task.run();
+        }
+        double nanos = (double) (System.nanoTime() - start) / RUNS / tokens.size();
+        System.out.printf("%-32s %10.2f ns/token (%d lines)%n", "line/column lookup", nanos, lines.size());
+    }
+
+    /**
+     * Generates a valid source of roughly the given size: a few fields and a
+     * single method whose body is repeated until the size is reached.
+     */
+    public static String source(int size) {
+        StringBuilder builder = new StringBuilder();
+        try {
+            source(builder, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // never thrown by a StringBuilder
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Appends the source {@link #source(int)} returns, a chunk at a time.
+     */
+    private static void source(Appendable out, long size) throws IOException {
+        long length = 0;
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 4; i++) {
+            builder.append("LET field_").append(i).append(": Integer = ").append(i).append(";\n");
+        }
+        builder.append("DEF main(x: Integer, y: Decimal): Integer DO\n");
+        for (int i = 0; length + builder.length() < size; i++) {
+            builder.append("    LET name").append(i).append(": String = \"text\\n").append(i).append("\";\n")
+                    .append("    IF x >= ").append(i).append(" AND y != 1.5 DO\n")
+                    .append("        print(obj.field.method(x + 1, 'c', -2));\n")
+                    .append("    END\n")
+                    .append("    WHILE x < 100 DO x = (x * 2) / 3 - y; END\n");
+            if (builder.length() >= 65536) {
+                out.append(builder);
+                length += builder.length();
+                builder.setLength(0);
+            }
+        }
+        builder.append("    RETURN x;\nEND\n");
+        out.append(builder);
+    }
+
+    /**
+     * Classifies every character with {@link String#matches(String)}, the way
+     * the lexer's regex peek does. This is the per character cost the lex
+     * methods paid before {@link CharClass}.
+     */
+    private static int classifyRegex(String input) {
+        int count = 0;
+        for (int i = 0; i < input.length(); i++) {
+            String c = String.valueOf(input.charAt(i));
+            if (c.matches("[^ \b\n\r\t]") && c.matches("[A-Za-z0-9_-]")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static final CharClass NON_WHITESPACE = CharClass.not(" \b\n\r\t");
+    private static final CharClass IDENTIFIER_PART = CharClass.of("A-Za-z0-9_-");
+
+    private static int classifyCharClass(String input) {
+        int count = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (NON_WHITESPACE.test(c) && IDENTIFIER_PART.test(c)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The lexer as it was before {@link CharClass}, where every peek and match
+     * tests one character against a regex with {@link String#matches(String)}.
+     * The lex methods make the same calls in the same order as they did then,
+     * so "lex (regex)" measures the old path end to end against "lex
+     * (CharClass)" on the same input.
+     */
+    private static final class RegexLexer {
+
+        private final String input;
+        private int index = 0;
+        private int length = 0;
+
+        private RegexLexer(String input) {
+            this.input = input;
+        }
+
+        private List<Token> lex() {
+            List<Token> tokens = new ArrayList<>();
+            while (index < input.length()) {
+                if (peek("[^ \b\n\r\t]")) {
+                    tokens.add(lexToken());
+                } else {
+                    index++;
+                    length = 0;
+                }
+            }
+            return tokens;
+        }
+
+        private Token lexToken() {
+            if (peek("[A-Za-z_]")) {
+                return lexIdentifier();
+            } else if (peek("[+-]", "[0-9]")) {
+                return lexNumber();
+            } else if (peek("[0-9]")) {
+                return lexNumber();
+            } else if (peek("'")) {
+                return lexCharacter();
+            } else if (peek("\"")) {
+                return lexString();
+            } else if (peek("\\\\")) {
+                throw new ParseException("Invalid Escape", index);
+            }
+            return lexOperator();
+        }
+
+        private Token lexIdentifier() {
+            match("[A-Za-z_]");
+            while (peek("[A-Za-z0-9_-]")) {
+                match("[A-Za-z0-9_-]");
+            }
+            return emit(Token.Type.IDENTIFIER);
+        }
+
+        private Token lexNumber() {
+            match("[+-]");
+            while (peek("[0-9]")) {
+                match("[0-9]");
+            }
+            if (peek("\\.", "[0-9]") && match("\\.")) {
+                while (peek("[0-9]")) {
+                    match("[0-9]");
+                }
+                return emit(Token.Type.DECIMAL);
+            }
+            return emit(Token.Type.INTEGER);
+        }
+
+        private Token lexCharacter() {
+            match("'");
+            if (match("\\\\") && match("[bnrt'\"\\\\]") && match("'")) {
+                return emit(Token.Type.CHARACTER);
+            }
+            if (match("[^'\n\r]") && match("'")) {
+                return emit(Token.Type.CHARACTER);
+            }
+            throw new ParseException("invalid Char", index);
+        }
+
+        private Token lexString() {
+            match("\"");
+            while (match("[^\"\n\r]")) {
+                if (match("[\n\r]")) {
+                    throw new ParseException("invalid escape", index);
+                }
+                if (match("\\\\") && !match("[bnrt'\"\\\\]")) {
+                    throw new ParseException("invalid escape", index);
+                }
+            }
+            if (!match("\"")) {
+                throw new ParseException("invalid string", index);
+            }
+            return emit(Token.Type.STRING);
+        }
+
+        private Token lexOperator() {
+            if (match("[<>!=]")) {
+                match("=");
+                return emit(Token.Type.OPERATOR);
+            }
+            match(".");
+            return emit(Token.Type.OPERATOR);
+        }
+
+        private boolean peek(String... patterns) {
+            for (int i = 0; i < patterns.length; i++) {
+                if (index + i >= input.length() || !String.valueOf(input.charAt(index + i)).matches(patterns[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean match(String... patterns) {
+            boolean peek = peek(patterns);
+            if (peek) {
+                index += patterns.length;
+                length += patterns.length;
+            }
+            return peek;
+        }
+
+        private Token emit(Token.Type type) {
+            int start = index - length;
+            length = 0;
+            return new Token(type, input.substring(start, index), start);
+        }
+
+    }
+
+    /**
+     * Returns the number of bytes allocated by this thread while running the
+     * task, or -1 if the JVM does not support measuring it.
+     */
+    public static long allocated(Runnable task) {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        task.run();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+    }
+
+    /**
+     * Runs the task and prints the average throughput in MB/s over the given
+     * number of input characters.
+     */
+    public static void report(String name, long chars, Runnable task) {
+        report(name, chars, WARMUP, RUNS, task);
+    }
+
+    private static void report(String name, long chars, int warmup, int runs, Runnable task) {
+        for (int i = 0; i < warmup; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            task.run();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9 / runs;
+        System.out.printf("%-32s %10.2f MB/s %10.3f ms%n", name, chars / 1e6 / seconds, seconds * 1e3);
+    }
+
+}
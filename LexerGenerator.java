@@ -0,0 +1,460 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates a minimized DFA from a declarative token specification, used by
+ * {@link DfaLexer}.
+ *
+ * Each rule is a pattern in a small regex syntax: literal characters
+ * ({@code \} escapes the next one), {@code .} ({@link CharClass#ANY}),
+ * classes like {@code [a-z_]} and {@code [^'\n\r]} (the inside is passed to
+ * {@link CharClass}, so it has no escapes), grouping, {@code |}, {@code *},
+ * {@code +} and {@code ?}. Rules either produce a token of some type or, for
+ * input which is known to be invalid, an error with a message.
+ *
+ * The patterns are combined into an NFA (Thompson's construction), turned into
+ * a DFA with the subset construction and then minimized by partition
+ * refinement. Characters are first grouped into symbols which every class
+ * treats the same, so the table has one column per symbol instead of one per
+ * character. When a state accepts more than one rule, the earliest rule wins.
+ */
+public final class LexerGenerator {
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    /**
+     * Adds a rule producing a token of the given type.
+     */
+    public LexerGenerator token(Token.Type type, String pattern) {
+        rules.add(new Rule(type, null, pattern));
+        return this;
+    }
+
+    /**
+     * Adds a rule matching invalid input, which is reported as a {@link
+     * ParseException} with the given message at the end of the match.
+     */
+    public LexerGenerator error(String message, String pattern) {
+        rules.add(new Rule(null, message, pattern));
+        return this;
+    }
+
+    public Dfa generate() {
+        Nfa nfa = new Nfa();
+        int start = nfa.state();
+        for (int i = 0; i < rules.size(); i++) {
+            int[] fragment = new PatternParser(nfa, rules.get(i).pattern).parse();
+            nfa.epsilon(start, fragment[0]);
+            nfa.accept.put(fragment[1], i);
+        }
+        Alphabet alphabet = new Alphabet(nfa.classes);
+        return minimize(determinize(nfa, start, alphabet), alphabet);
+    }
+
+    /**
+     * A rule of the specification.
+     */
+    public static final class Rule {
+
+        private final Token.Type type;
+        private final String error;
+        private final String pattern;
+
+        private Rule(Token.Type type, String error, String pattern) {
+            this.type = type;
+            this.error = error;
+            this.pattern = pattern;
+        }
+
+        public Token.Type getType() {
+            return type;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+    }
+
+    /**
+     * The generated automaton. State 0 is the start state, {@link
+     * #next(int, char)} is -1 where there is no transition, and {@link
+     * #accept(int)} is the accepted rule or -1.
+     */
+    public static final class Dfa {
+
+        private final int[] table; // state * symbols + symbol -> state
+        private final int[] accept;
+        private final int symbols;
+        private final Alphabet alphabet;
+        private final Rule[] rules;
+
+        private Dfa(int[] table, int[] accept, Alphabet alphabet, Rule[] rules) {
+            this.table = table;
+            this.accept = accept;
+            this.symbols = alphabet.size;
+            this.alphabet = alphabet;
+            this.rules = rules;
+        }
+
+        public int next(int state, char c) {
+            return table[state * symbols + alphabet.symbol(c)];
+        }
+
+        public int accept(int state) {
+            return accept[state];
+        }
+
+        public Rule rule(int rule) {
+            return rules[rule];
+        }
+
+        public int states() {
+            return accept.length;
+        }
+
+        public int symbols() {
+            return symbols;
+        }
+
+    }
+
+    private static final class Nfa {
+
+        private final List<List<Integer>> epsilons = new ArrayList<>();
+        private final List<CharClass> on = new ArrayList<>(); // class of the single transition
+        private final List<Integer> to = new ArrayList<>();
+        private final List<CharClass> classes = new ArrayList<>();
+        private final Map<Integer, Integer> accept = new HashMap<>();
+
+        private int state() {
+            epsilons.add(new ArrayList<>());
+            on.add(null);
+            to.add(-1);
+            return epsilons.size() - 1;
+        }
+
+        private void epsilon(int from, int target) {
+            epsilons.get(from).add(target);
+        }
+
+        private void transition(int from, CharClass chars, int target) {
+            on.set(from, chars);
+            to.set(from, target);
+            if (!classes.contains(chars)) {
+                classes.add(chars);
+            }
+        }
+
+    }
+
+    /**
+     * Groups characters which are members of exactly the same classes into a
+     * symbol. ASCII characters are looked up in a table, the few non-ASCII
+     * characters named by a class are listed, and every other non-ASCII
+     * character shares one symbol.
+     */
+    private static final class Alphabet {
+
+        private final byte[] ascii = new byte[128];
+        private final char[] extra;
+        private final int[] extraSymbols;
+        private final int other;
+        private final int size;
+        private final List<BitSet> members = new ArrayList<>(); // symbol -> classes
+
+        private Alphabet(List<CharClass> classes) {
+            StringBuilder extra = new StringBuilder();
+            for (CharClass chars : classes) {
+                for (char c : chars.extra()) {
+                    if (extra.indexOf(String.valueOf(c)) < 0) {
+                        extra.append(c);
+                    }
+                }
+            }
+            char representative = 128;
+            while (extra.indexOf(String.valueOf(representative)) >= 0) {
+                representative++;
+            }
+            Map<BitSet, Integer> symbols = new LinkedHashMap<>();
+            for (char c = 0; c < 128; c++) {
+                ascii[c] = (byte) symbol(symbols, classes, c);
+            }
+            this.extra = extra.toString().toCharArray();
+            this.extraSymbols = new int[this.extra.length];
+            for (int i = 0; i < this.extra.length; i++) {
+                extraSymbols[i] = symbol(symbols, classes, this.extra[i]);
+            }
+            this.other = symbol(symbols, classes, representative);
+            this.size = symbols.size();
+            this.members.addAll(symbols.keySet());
+        }
+
+        private static int symbol(Map<BitSet, Integer> symbols, List<CharClass> classes, char c) {
+            BitSet signature = new BitSet();
+            for (int i = 0; i < classes.size(); i++) {
+                if (classes.get(i).test(c)) {
+                    signature.set(i);
+                }
+            }
+            return symbols.computeIfAbsent(signature, k -> symbols.size());
+        }
+
+        private int symbol(char c) {
+            if (c < 128) {
+                return ascii[c];
+            }
+            for (int i = 0; i < extra.length; i++) {
+                if (extra[i] == c) {
+                    return extraSymbols[i];
+                }
+            }
+            return other;
+        }
+
+    }
+
+    private static final class Subsets {
+
+        private final List<BitSet> states = new ArrayList<>();
+        private final List<int[]> transitions = new ArrayList<>();
+        private final List<Integer> accept = new ArrayList<>();
+
+    }
+
+    private Subsets determinize(Nfa nfa, int start, Alphabet alphabet) {
+        Subsets dfa = new Subsets();
+        Map<BitSet, Integer> index = new HashMap<>();
+        Deque<Integer> work = new ArrayDeque<>();
+        BitSet initial = closure(nfa, start);
+        index.put(initial, 0);
+        dfa.states.add(initial);
+        work.add(0);
+        while (!work.isEmpty()) {
+            int state = work.poll();
+            BitSet subset = dfa.states.get(state);
+            int[] transitions = new int[alphabet.size];
+            Arrays.fill(transitions, -1);
+            for (int symbol = 0; symbol < alphabet.size; symbol++) {
+                BitSet target = new BitSet();
+                for (int s = subset.nextSetBit(0); s >= 0; s = subset.nextSetBit(s + 1)) {
+                    CharClass chars = nfa.on.get(s);
+                    if (chars != null && alphabet.members.get(symbol).get(nfa.classes.indexOf(chars))) {
+                        target.or(closure(nfa, nfa.to.get(s)));
+                    }
+                }
+                if (!target.isEmpty()) {
+                    Integer existing = index.get(target);
+                    if (existing == null) {
+                        existing = dfa.states.size();
+                        index.put(target, existing);
+                        dfa.states.add(target);
+                        work.add(existing);
+                    }
+                    transitions[symbol] = existing;
+                }
+            }
+            while (dfa.transitions.size() <= state) {
+                dfa.transitions.add(null);
+            }
+            dfa.transitions.set(state, transitions);
+        }
+        for (BitSet subset : dfa.states) {
+            int rule = -1;
+            for (int s = subset.nextSetBit(0); s >= 0; s = subset.nextSetBit(s + 1)) {
+                Integer accepted = nfa.accept.get(s);
+                if (accepted != null && (rule < 0 || accepted < rule)) {
+                    rule = accepted;
+                }
+            }
+            dfa.accept.add(rule);
+        }
+        return dfa;
+    }
+
+    private static BitSet closure(Nfa nfa, int state) {
+        BitSet closure = new BitSet();
+        Deque<Integer> work = new ArrayDeque<>();
+        closure.set(state);
+        work.add(state);
+        while (!work.isEmpty()) {
+            for (int target : nfa.epsilons.get(work.poll())) {
+                if (!closure.get(target)) {
+                    closure.set(target);
+                    work.add(target);
+                }
+            }
+        }
+        return closure;
+    }
+
+    /**
+     * Merges equivalent states: starting from groups of states accepting the
+     * same rule, groups are split until every state in a group moves to the
+     * same groups on every symbol.
+     */
+    private Dfa minimize(Subsets dfa, Alphabet alphabet) {
+        int states = dfa.states.size();
+        int[] group = new int[states];
+        for (int s = 0; s < states; s++) {
+            group[s] = dfa.accept.get(s) + 1;
+        }
+        int groups;
+        while (true) {
+            Map<List<Integer>, Integer> signatures = new LinkedHashMap<>();
+            int[] next = new int[states];
+            for (int s = 0; s < states; s++) {
+                List<Integer> signature = new ArrayList<>();
+                signature.add(group[s]);
+                for (int target : dfa.transitions.get(s)) {
+                    signature.add(target < 0 ? -1 : group[target]);
+                }
+                next[s] = signatures.computeIfAbsent(signature, k -> signatures.size());
+            }
+            boolean stable = signatures.size() == count(group);
+            group = next;
+            groups = signatures.size();
+            if (stable) {
+                break;
+            }
+        }
+        // renumber so the start state's group is 0
+        int[] order = new int[groups];
+        Arrays.fill(order, -1);
+        order[group[0]] = 0;
+        int assigned = 1;
+        for (int s = 0; s < states; s++) {
+            if (order[group[s]] < 0) {
+                order[group[s]] = assigned++;
+            }
+        }
+        int[] table = new int[groups * alphabet.size];
+        int[] accept = new int[groups];
+        for (int s = 0; s < states; s++) {
+            int g = order[group[s]];
+            accept[g] = dfa.accept.get(s);
+            int[] transitions = dfa.transitions.get(s);
+            for (int symbol = 0; symbol < alphabet.size; symbol++) {
+                table[g * alphabet.size + symbol] = transitions[symbol] < 0 ? -1 : order[group[transitions[symbol]]];
+            }
+        }
+        return new Dfa(table, accept, alphabet, rules.toArray(new Rule[0]));
+    }
+
+    private static int count(int[] group) {
+        return (int) Arrays.stream(group).distinct().count();
+    }
+
+    /**
+     * Parses a pattern into an NFA fragment, returned as its start and end
+     * states.
+     */
+    private static final class PatternParser {
+
+        private final Nfa nfa;
+        private final String pattern;
+        private int index = 0;
+
+        private PatternParser(Nfa nfa, String pattern) {
+            this.nfa = nfa;
+            this.pattern = pattern;
+        }
+
+        private int[] parse() {
+            int[] fragment = parseAlternation();
+            if (index != pattern.length()) {
+                throw new IllegalArgumentException("Unexpected '" + pattern.charAt(index) + "' at " + index + " in " + pattern);
+            }
+            return fragment;
+        }
+
+        private int[] parseAlternation() {
+            int[] fragment = parseSequence();
+            while (index < pattern.length() && pattern.charAt(index) == '|') {
+                index++;
+                int[] other = parseSequence();
+                int start = nfa.state();
+                int end = nfa.state();
+                nfa.epsilon(start, fragment[0]);
+                nfa.epsilon(start, other[0]);
+                nfa.epsilon(fragment[1], end);
+                nfa.epsilon(other[1], end);
+                fragment = new int[] {start, end};
+            }
+            return fragment;
+        }
+
+        private int[] parseSequence() {
+            int start = nfa.state();
+            int end = start;
+            while (index < pattern.length() && pattern.charAt(index) != '|' && pattern.charAt(index) != ')') {
+                int[] fragment = parseRepetition();
+                nfa.epsilon(end, fragment[0]);
+                end = fragment[1];
+            }
+            return new int[] {start, end};
+        }
+
+        private int[] parseRepetition() {
+            int[] fragment = parseAtom();
+            while (index < pattern.length() && "*+?".indexOf(pattern.charAt(index)) >= 0) {
+                char operator = pattern.charAt(index++);
+                int start = nfa.state();
+                int end = nfa.state();
+                nfa.epsilon(start, fragment[0]);
+                nfa.epsilon(fragment[1], end);
+                if (operator != '+') {
+                    nfa.epsilon(start, end);
+                }
+                if (operator != '?') {
+                    nfa.epsilon(fragment[1], fragment[0]);
+                }
+                fragment = new int[] {start, end};
+            }
+            return fragment;
+        }
+
+        private int[] parseAtom() {
+            char c = pattern.charAt(index++);
+            if (c == '(') {
+                int[] fragment = parseAlternation();
+                if (index >= pattern.length() || pattern.charAt(index++) != ')') {
+                    throw new IllegalArgumentException("Missing ')' in " + pattern);
+                }
+                return fragment;
+            }
+            CharClass chars;
+            if (c == '[') {
+                int close = pattern.indexOf(']', index);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Missing ']' in " + pattern);
+                }
+                String members = pattern.substring(index, close);
+                chars = members.startsWith("^") ? CharClass.not(members.substring(1)) : CharClass.of(members);
+                index = close + 1;
+            } else if (c == '.') {
+                chars = CharClass.ANY;
+            } else {
+                if (c == '\\') {
+                    c = pattern.charAt(index++);
+                }
+                chars = CharClass.of(String.valueOf(c));
+            }
+            int start = nfa.state();
+            int end = nfa.state();
+            nfa.transition(start, chars, end);
+            return new int[] {start, end};
+        }
+
+    }
+
+}
@@ -0,0 +1,101 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Checks that {@link Lexer#lexRecovering()} reports every lexical error,
+ * resumes lexing after each one, and keeps the line index in step.
+ */
+final class LexerRecoveryTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testLexRecovering(String test, String input, List<String> tokens, List<Integer> errors) {
+        Lexer lexer = new Lexer(input);
+        List<String> actual = new ArrayList<>();
+        for (Token token : lexer.lexRecovering()) {
+            actual.add(token.getLiteral() + "@" + token.getIndex());
+        }
+        Assertions.assertEquals(tokens, actual);
+        List<Integer> indices = new ArrayList<>();
+        for (ParseException error : lexer.getErrors()) {
+            indices.add(error.getIndex());
+        }
+        Assertions.assertEquals(errors, indices);
+        assertLines(input, lexer.getLines());
+    }
+
+    private static Stream<Arguments> testLexRecovering() {
+        return Stream.of(
+                Arguments.of("Valid", "LET x = 1;\n", Arrays.asList("LET@0", "x@4", "=@6", "1@8", ";@9"), Arrays.asList()),
+                Arguments.of("Multiple Errors", "'ab' x \\q y \"a\\q\" z",
+                        Arrays.asList("x@5", "y@10", "z@18"), Arrays.asList(2, 8, 15)),
+                Arguments.of("String Into LF", "x \"abc\ny z", Arrays.asList("x@0", "y@7", "z@9"), Arrays.asList(7)),
+                Arguments.of("String Into CRLF", "\"abc\r\ny", Arrays.asList("y@6"), Arrays.asList(5)),
+                Arguments.of("String Into CR", "\"abc\rz\n'", Arrays.asList("z@5"), Arrays.asList(5, 8)),
+                Arguments.of("Escaped Line Break", "\"a\\\nb", Arrays.asList("b@4"), Arrays.asList(3)),
+                Arguments.of("Character Into LF", "'\nx", Arrays.asList("x@2"), Arrays.asList(1)),
+                Arguments.of("Errors On Every Line", "\"a\n\"b\r\n'c\rd",
+                        Arrays.asList("d@10"), Arrays.asList(3, 6, 9)),
+                Arguments.of("Unterminated At End", "a ' b\n\"\"\" c", Arrays.asList("a@0", "\"\"@6"), Arrays.asList(4, 11))
+        );
+    }
+
+    /**
+     * Checks random inputs: the first error is the one {@link Lexer#lex()}
+     * throws, errors are in order, every token is one the lexer would produce
+     * on its own, and the line index matches the whole input.
+     */
+    @Test
+    void testRandomInputs() {
+        Random random = new Random(0);
+        String alphabet = "ab1.-'\"\\nq =;\n\r\t";
+        for (int i = 0; i < 50_000; i++) {
+            StringBuilder builder = new StringBuilder();
+            for (int length = random.nextInt(16); length > 0; length--) {
+                builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String input = builder.toString();
+            Lexer lexer = new Lexer(input);
+            List<Token> tokens = lexer.lexRecovering();
+            List<ParseException> errors = lexer.getErrors();
+            try {
+                Assertions.assertEquals(new Lexer(input).lex(), tokens, input);
+                Assertions.assertTrue(errors.isEmpty(), input);
+            } catch (ParseException e) {
+                Assertions.assertFalse(errors.isEmpty(), input);
+                Assertions.assertEquals(e.getIndex(), errors.get(0).getIndex(), input);
+            }
+            for (int k = 1; k < errors.size(); k++) {
+                Assertions.assertTrue(errors.get(k - 1).getIndex() < errors.get(k).getIndex(), input);
+            }
+            for (Token token : tokens) {
+                List<Token> alone = new Lexer(token.getLiteral()).lex();
+                Assertions.assertEquals(Arrays.asList(new Token(token.getType(), token.getLiteral(), 0)), alone, input);
+                Assertions.assertEquals(token.getLiteral(),
+                        input.substring(token.getIndex(), token.getIndex() + token.getLiteral().length()), input);
+            }
+            assertLines(input, lexer.getLines());
+        }
+    }
+
+    private static void assertLines(String input, LineIndex lines) {
+        LineIndex expected = LineIndex.of(input);
+        Assertions.assertEquals(expected.size(), lines.size(), input);
+        for (int offset = 0; offset <= input.length(); offset++) {
+            Assertions.assertEquals(expected.getLine(offset), lines.getLine(offset), input);
+            Assertions.assertEquals(expected.getColumn(offset), lines.getColumn(offset), input);
+        }
+    }
+
+}
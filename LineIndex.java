@@ -0,0 +1,74 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * The offsets at which each line of a source starts, used to turn the index
+ * of a {@link Token} or {@link ParseException} into a line and column without
+ * rescanning the source. Lines and columns are 1-based; {@code "\n"}, {@code
+ * "\r\n"} and {@code "\r"} all end a line.
+ *
+ * The lexer builds one as it skips whitespace, see {@link Lexer#getLines()}.
+ */
+public final class LineIndex {
+
+    private int[] starts = new int[64];
+    private int size = 1; // the first line starts at 0
+
+    /**
+     * Returns the index of an entire source.
+     */
+    public static LineIndex of(CharSequence source) {
+        LineIndex lines = new LineIndex();
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '\n' || c == '\r' && (i + 1 == source.length() || source.charAt(i + 1) != '\n')) {
+                lines.add(i + 1);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Records that a line starts at the given offset, which must be after the
+     * start of every line added so far.
+     */
+    public void add(int start) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+        }
+        starts[size++] = start;
+    }
+
+    /**
+     * Returns the number of lines seen so far.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the line containing the given offset.
+     */
+    public int getLine(int offset) {
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low + 1;
+    }
+
+    /**
+     * Returns the column of the given offset within its line.
+     */
+    public int getColumn(int offset) {
+        return offset - starts[getLine(offset) - 1] + 1;
+    }
+
+}
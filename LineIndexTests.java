@@ -0,0 +1,87 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Checks that a {@link LineIndex}, whether built by {@link LineIndex#of} or
+ * by the {@link Lexer}, gives the line and column of every offset.
+ */
+final class LineIndexTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testLineIndex(String test, String source, int lines) {
+        Assertions.assertEquals(lines, LineIndex.of(source).size());
+        test(source);
+    }
+
+    private static Stream<Arguments> testLineIndex() {
+        return Stream.of(
+                Arguments.of("Empty", "", 1),
+                Arguments.of("Single Line", "LET x = 1;", 1),
+                Arguments.of("LF", "a\nb\nc", 3),
+                Arguments.of("CR", "a\rb\rc", 3),
+                Arguments.of("CRLF", "a\r\nb\r\nc", 3),
+                Arguments.of("Mixed", "a\rb\r\nc\nd", 4),
+                Arguments.of("CR CRLF", "a\r\r\nb", 3),
+                Arguments.of("LF CR", "a\n\rb", 3),
+                Arguments.of("Empty Lines", "\n\n\na\n\n", 6),
+                Arguments.of("Empty CRLF Lines", "\r\n\r\na\r\n", 4),
+                Arguments.of("Trailing LF", "a\n", 2),
+                Arguments.of("Trailing CR", "a\r", 2),
+                Arguments.of("Only CR", "\r", 2),
+                Arguments.of("Indented", "DEF f() DO\n    RETURN 1;\r\n\tEND\r", 4),
+                Arguments.of("Literals", "print(\"a b\", 'c');\n  x;", 2)
+        );
+    }
+
+    @Test
+    void testRandomSources() {
+        Random random = new Random(0);
+        String alphabet = "ab1 \t\n\r;";
+        for (int i = 0; i < 10_000; i++) {
+            StringBuilder source = new StringBuilder();
+            for (int length = random.nextInt(16); length > 0; length--) {
+                source.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            test(source.toString());
+        }
+    }
+
+    /**
+     * Checks the line and column of every offset of the source, up to and
+     * including the offset at its end, against a count of the line breaks
+     * before it, for both kinds of index.
+     */
+    private static void test(String source) {
+        LineIndex of = LineIndex.of(source);
+        Lexer lexer = new Lexer(source);
+        lexer.lex();
+        LineIndex lexed = lexer.getLines();
+        Assertions.assertEquals(of.size(), lexed.size(), source);
+        int line = 1;
+        int column = 1;
+        for (int offset = 0; offset <= source.length(); offset++) {
+            String message = source + " at " + offset;
+            Assertions.assertEquals(line, of.getLine(offset), message);
+            Assertions.assertEquals(column, of.getColumn(offset), message);
+            Assertions.assertEquals(line, lexed.getLine(offset), message);
+            Assertions.assertEquals(column, lexed.getColumn(offset), message);
+            char c = offset < source.length() ? source.charAt(offset) : 0;
+            if (c == '\n' || c == '\r' && (offset + 1 == source.length() || source.charAt(offset + 1) != '\n')) {
+                line++;
+                column = 1;
+            } else {
+                column++;
+            }
+        }
+    }
+
+}
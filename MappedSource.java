@@ -0,0 +1,71 @@
+package plc.project;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An ASCII {@link CharSequence} view of a (usually memory mapped) byte buffer,
+ * used by {@link Lexer#map(java.nio.file.Path)}. Characters are read straight
+ * from the buffer, so the source is never copied onto the heap; only the
+ * literals of emitted tokens are decoded.
+ */
+public final class MappedSource implements CharSequence {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    public MappedSource(ByteBuffer buffer) {
+        this(buffer, 0, buffer.limit());
+    }
+
+    private MappedSource(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Returns true if every byte of the buffer is ASCII, checking eight bytes
+     * at a time.
+     */
+    public static boolean isAscii(ByteBuffer buffer) {
+        int i = 0;
+        for (; i + 8 <= buffer.limit(); i += 8) {
+            if ((buffer.getLong(i) & 0x8080808080808080L) != 0) {
+                return false;
+            }
+        }
+        for (; i < buffer.limit(); i++) {
+            if (buffer.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) buffer.get(offset + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new MappedSource(buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+}
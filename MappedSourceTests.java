@@ -0,0 +1,112 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Checks that {@link Lexer#map(Path)} lexes files exactly like the string
+ * lexer lexes their decoded contents, on the {@link MappedSource} path for
+ * ASCII files and the decoding path for anything else.
+ */
+final class MappedSourceTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testMap(String test, String source) throws IOException {
+        Path file = Files.createTempFile("source", ".plc");
+        try {
+            Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+            Lexer expected = new Lexer(source);
+            Lexer actual = Lexer.map(file);
+            Assertions.assertEquals(expected.lex(), actual.lex());
+            Assertions.assertEquals(expected.getLines().size(), actual.getLines().size());
+            TokenBuffer tokens = new Lexer(source).lexBuffer();
+            TokenBuffer mapped = Lexer.map(file).lexBuffer();
+            Assertions.assertEquals(tokens.size(), mapped.size());
+            for (int i = 0; i < tokens.size(); i++) {
+                Assertions.assertEquals(tokens.type(i), mapped.type(i));
+                Assertions.assertEquals(tokens.literal(i), mapped.literal(i));
+                Assertions.assertEquals(tokens.index(i), mapped.index(i));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static Stream<Arguments> testMap() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("ASCII", ParserFixtures.EVERY_NODE),
+                Arguments.of("ASCII Source", LexerBenchmark.source(256 * 1024)),
+                Arguments.of("Short", "x;"),
+                Arguments.of("UTF-8 String", "LET s = \"héllo € 😀\";\nprint('é');\n"),
+                Arguments.of("UTF-8 Last Byte", ParserFixtures.EVERY_NODE + "\"é\""),
+                Arguments.of("UTF-8 Large", LexerBenchmark.source(64 * 1024) + "print(\"世界\");\n")
+        );
+    }
+
+    /**
+     * Checks that an error in a mapped file is thrown at the same index as
+     * in the string, on both paths.
+     */
+    @Test
+    void testErrors() throws IOException {
+        Path file = Files.createTempFile("source", ".plc");
+        try {
+            for (String source : new String[] {"x;\n\"abc\ny;", "\"é\" 'ab'", "x \\q"}) {
+                Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+                ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Lexer(source).lex());
+                ParseException actual = Assertions.assertThrows(ParseException.class, () -> Lexer.map(file).lex());
+                Assertions.assertEquals(expected.getIndex(), actual.getIndex(), source);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Checks that a single non-ASCII byte is found at every position, both in
+     * the eight byte words and the bytes after them.
+     */
+    @Test
+    void testIsAscii() {
+        for (int length = 0; length <= 24; length++) {
+            byte[] bytes = new byte[length];
+            Arrays.fill(bytes, (byte) 'a');
+            Assertions.assertTrue(MappedSource.isAscii(ByteBuffer.wrap(bytes)));
+            for (int i = 0; i < length; i++) {
+                bytes[i] = (byte) 0x80;
+                Assertions.assertFalse(MappedSource.isAscii(ByteBuffer.wrap(bytes)), length + " at " + i);
+                bytes[i] = 0x7F;
+                Assertions.assertTrue(MappedSource.isAscii(ByteBuffer.wrap(bytes)));
+            }
+        }
+    }
+
+    @Test
+    void testCharSequence() {
+        String source = ParserFixtures.EVERY_NODE;
+        MappedSource mapped = new MappedSource(ByteBuffer.wrap(source.getBytes(StandardCharsets.US_ASCII)));
+        Assertions.assertEquals(source.length(), mapped.length());
+        Assertions.assertEquals(source, mapped.toString());
+        for (int i = 0; i < source.length(); i++) {
+            Assertions.assertEquals(source.charAt(i), mapped.charAt(i));
+        }
+        CharSequence sub = mapped.subSequence(10, 40);
+        Assertions.assertEquals(source.substring(10, 40), sub.toString());
+        Assertions.assertEquals(source.substring(15, 20), sub.subSequence(5, 10).toString());
+        Assertions.assertEquals(source.charAt(12), sub.charAt(2));
+    }
+
+}
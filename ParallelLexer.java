@@ -0,0 +1,71 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Lexes large inputs in parallel on a {@link ForkJoinPool}, producing the same
+ * tokens as {@link Lexer#lex()}.
+ *
+ * No token can contain a line break (strings and characters can't span
+ * lines, and every other token stops at whitespace), so the lexer is always
+ * between tokens at a newline. The input is split into chunks at newlines,
+ * each chunk is lexed as its own task with indices relative to the whole
+ * input, and the results are joined in order. If any chunk fails, the error
+ * of the earliest failing chunk is thrown, which is the same one the
+ * sequential lexer would throw.
+ */
+public final class ParallelLexer {
+
+    static final int CHUNK = 1 << 16;
+
+    private ParallelLexer() {}
+
+    public static List<Token> lex(CharSequence input) {
+        return lex(input, ForkJoinPool.commonPool());
+    }
+
+    public static List<Token> lex(CharSequence input, ForkJoinPool pool) {
+        List<ForkJoinTask<List<Token>>> chunks = new ArrayList<>();
+        for (int start = 0; start < input.length(); ) {
+            int end = split(input, start + CHUNK);
+            int chunkStart = start;
+            chunks.add(pool.submit(() -> new Lexer(input, chunkStart, end).lex()));
+            start = end;
+        }
+        List<List<Token>> results = new ArrayList<>(chunks.size());
+        int size = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            try {
+                results.add(chunks.get(i).join());
+                size += results.get(i).size();
+            } catch (ParseException e) {
+                for (int j = i + 1; j < chunks.size(); j++) {
+                    chunks.get(j).cancel(false);
+                }
+                throw e;
+            }
+        }
+        List<Token> tokens = new ArrayList<>(size);
+        for (List<Token> result : results) {
+            tokens.addAll(result);
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the position just after the first newline at or after the given
+     * position, or the end of the input if there is none.
+     */
+    private static int split(CharSequence input, int position) {
+        for (int i = position; i < input.length(); i++) {
+            if (input.charAt(i) == '\n' || input.charAt(i) == '\r') {
+                return i + 1;
+            }
+        }
+        return input.length();
+    }
+
+}
@@ -0,0 +1,108 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * Checks that {@link ParallelLexer} produces exactly the same tokens as
+ * {@link Lexer#lex()}, and fails at the same index, wherever the chunk
+ * boundaries fall.
+ */
+final class ParallelLexerTests {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    /**
+     * Checks a token (or whitespace) placed so that each of its characters in
+     * turn, and the positions just before and after it, is the first one past
+     * {@link ParallelLexer#CHUNK}.
+     */
+    @ParameterizedTest
+    @MethodSource
+    void testChunkBoundary(String test, String token) {
+        for (int k = -1; k <= token.length(); k++) {
+            String input = filler(ParallelLexer.CHUNK - k) + token + " end;\nx;\n";
+            test(input);
+        }
+    }
+
+    private static Stream<Arguments> testChunkBoundary() {
+        return Stream.of(
+                Arguments.of("Identifier", "identifier"),
+                Arguments.of("Number", "-12.5"),
+                Arguments.of("Character", "'\\n'"),
+                Arguments.of("String", "\"a string with spaces\""),
+                Arguments.of("Empty String", "\"\""),
+                Arguments.of("Operator", "<="),
+                Arguments.of("Spaces", "                "),
+                Arguments.of("Whitespace", " \t\b \t "),
+                Arguments.of("CRLF", "x\r\n\r\ny"),
+                Arguments.of("CR", "x\r\ry")
+        );
+    }
+
+    /**
+     * Checks that an error is reported at the same index as the sequential
+     * lexer, when it is in any one of several chunks, in several of them, or
+     * in a token straddling a chunk boundary.
+     */
+    @ParameterizedTest
+    @MethodSource
+    void testErrors(String test, int[] errors) {
+        StringBuilder input = new StringBuilder(filler(4 * ParallelLexer.CHUNK + 100));
+        for (int error : errors) {
+            input.replace(error, error + 4, "\"abc");
+        }
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Lexer(input).lex());
+        ParseException actual = Assertions.assertThrows(ParseException.class, () -> ParallelLexer.lex(input, POOL));
+        Assertions.assertEquals(expected.getIndex(), actual.getIndex());
+        Assertions.assertEquals(expected.getMessage(), actual.getMessage());
+    }
+
+    private static Stream<Arguments> testErrors() {
+        int chunk = ParallelLexer.CHUNK;
+        return Stream.of(
+                Arguments.of("First Chunk", new int[] {10}),
+                Arguments.of("Last Chunk", new int[] {4 * chunk + 10}),
+                Arguments.of("Several Chunks", new int[] {chunk + 10, 3 * chunk + 10}),
+                Arguments.of("Every Chunk", new int[] {10, chunk + 10, 2 * chunk + 10, 3 * chunk + 10, 4 * chunk + 10}),
+                Arguments.of("Straddling", new int[] {chunk - 2}),
+                Arguments.of("Straddling Later", new int[] {2 * chunk - 2, 3 * chunk + 10})
+        );
+    }
+
+    @Test
+    void testSource() {
+        test(LexerBenchmark.source(5 * ParallelLexer.CHUNK / 2));
+        test("");
+        test("x");
+    }
+
+    private static void test(String input) {
+        List<Token> expected = new Lexer(input).lex();
+        Assertions.assertEquals(expected, ParallelLexer.lex(input, POOL));
+    }
+
+    /**
+     * Returns valid input of the given length, as short lines of identifiers
+     * padded with spaces at the end.
+     */
+    private static String filler(int length) {
+        StringBuilder filler = new StringBuilder(length);
+        while (filler.length() + 16 <= length) {
+            filler.append("name = value;\n");
+        }
+        while (filler.length() < length) {
+            filler.append(' ');
+        }
+        return filler.toString();
+    }
+
+}
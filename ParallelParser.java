@@ -0,0 +1,65 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses sources with many methods in parallel on a {@link ForkJoinPool},
+ * producing the same AST as {@link Parser#parseSource()}.
+ *
+ * The bodies of different methods are independent. A sequential pre-scan with
+ * {@link Parser#parseSourceLazily()} parses the fields and method headers and
+ * finds where each body ends by counting {@code DO} and {@code END}, without
+ * parsing the bodies. Each body is then parsed as its own task and the
+ * methods keep their order. The tasks share the tokens, so every literal is
+ * interned before they start and they only read the interner.
+ *
+ * Errors are deterministic. If the pre-scan or any body fails, the remaining
+ * bodies are cancelled and the source is parsed again sequentially, and that
+ * result is returned: the exception thrown is the one {@link
+ * Parser#parseSource()} would throw, at the earliest error in the source, and
+ * a source the sequential parser accepts is never rejected. Invalid sources
+ * are expected to be rare, so this keeps the parallel path simple at the cost
+ * of a second parse.
+ */
+public final class ParallelParser {
+
+    private ParallelParser() {}
+
+    public static Ast.Source parse(List<Token> tokens) {
+        return parse(TokenBuffer.of(tokens));
+    }
+
+    public static Ast.Source parse(TokenBuffer tokens) {
+        return parse(tokens, ForkJoinPool.commonPool());
+    }
+
+    public static Ast.Source parse(TokenBuffer tokens, ForkJoinPool pool) {
+        List<Ast.Field> fields = new ArrayList<>();
+        List<Ast.Method> methods = new ArrayList<>();
+        try {
+            new Parser(tokens).parseSourceLazily(fields, methods);
+        } catch (RuntimeException e) {
+            return new Parser(tokens).parseSource();
+        }
+        tokens.internLiterals();
+        List<ForkJoinTask<Integer>> bodies = new ArrayList<>(methods.size());
+        for (Ast.Method method : methods) {
+            bodies.add(pool.submit(() -> method.getStatements().size())); // forces the lazy body
+        }
+        for (int i = 0; i < bodies.size(); i++) {
+            try {
+                bodies.get(i).join();
+            } catch (RuntimeException e) {
+                for (int j = i + 1; j < bodies.size(); j++) {
+                    bodies.get(j).cancel(false);
+                }
+                return new Parser(tokens).parseSource();
+            }
+        }
+        return new Ast.Source(fields, methods);
+    }
+
+}
@@ -0,0 +1,85 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks that {@link ParallelParser} produces the same AST as the sequential
+ * parser, and throws the same exception.
+ */
+final class ParallelParserTests {
+
+    /**
+     * Checks that the same AST is produced, and the same exception is thrown
+     * when two methods have errors.
+     */
+    @Test
+    void testParallelParser() {
+        String source = "LET count: Integer = 0;\n" + ParserFixtures.methods(200, i ->
+                "    WHILE x > " + i + " DO x = x - 1; END\n"
+                + "    IF x == 0 DO RETURN count; END\n"
+                + "    RETURN x * 2;\n");
+        TokenBuffer tokens = new Lexer(source).lexBuffer();
+        Assertions.assertEquals(new Parser(tokens).parseSource(), ParallelParser.parse(tokens));
+
+        String invalid = source.replace("x > 150", "x >").replace("x > 50", "x > *");
+        TokenBuffer invalidTokens = new Lexer(invalid).lexBuffer();
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(invalidTokens).parseSource());
+        ParseException actual = Assertions.assertThrows(ParseException.class, () -> ParallelParser.parse(invalidTokens));
+        Assertions.assertEquals(expected.getIndex(), actual.getIndex());
+    }
+
+    /**
+     * Checks that a source the sequential parser accepts is never rejected,
+     * even when the pre-scan can't find where a body ends because a member
+     * is named like a keyword.
+     */
+    @Test
+    void testKeywordNames() {
+        String source = "DEF f(x: Integer) DO\n  x = obj.END;\n  RETURN x;\nEND\nDEF g() DO RETURN 1; END\n";
+        TokenBuffer tokens = new Lexer(source).lexBuffer();
+        Assertions.assertEquals(new Parser(tokens).parseSource(), ParallelParser.parse(tokens));
+    }
+
+    /**
+     * Checks that methods using many names, which the tasks look up in the
+     * shared interner at the same time, give the same AST as the sequential
+     * parser and still share one String per name. Each body is long enough
+     * for the tasks to overlap even on one core, and the parse is repeated
+     * with new tokens since a race only shows up now and then.
+     */
+    @Test
+    void testParallelNames() {
+        String source = ParserFixtures.methods(16, i -> {
+            StringBuilder body = new StringBuilder();
+            for (int k = 0; k < 4000; k++) {
+                body.append("    LET name").append(k).append(" = f").append(k % 97).append("(x, obj.field").append(i).append(");\n");
+            }
+            return body.append("    RETURN x;\n").toString();
+        });
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int i = 0; i < 30; i++) {
+                Ast.Source expected = new Parser(new Lexer(source).lexBuffer()).parseSource();
+                Ast.Source parallel = ParallelParser.parse(new Lexer(source).lexBuffer(), pool);
+                Assertions.assertEquals(expected, parallel);
+                Map<String, String> names = new HashMap<>();
+                for (Ast.Method method : parallel.getMethods()) {
+                    for (Ast.Stmt statement : method.getStatements()) {
+                        if (statement instanceof Ast.Stmt.Declaration) {
+                            String name = ((Ast.Stmt.Declaration) statement).getName();
+                            Assertions.assertSame(names.computeIfAbsent(name, key -> name), name);
+                        }
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
@@ -2,6 +2,8 @@ package plc.project;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -13,19 +15,95 @@ import java.util.Optional;
  * Tree (AST).
  *
  * The parser has a similar architecture to the lexer, just with {@link Token}s
- * instead of characters. As before, {@link #peek(Object...)} and {@link
- * #match(Object...)} are helpers to make the implementation easier.
+ * instead of characters. As before, the {@code peek} and {@code match}
+ * overloads are helpers to make the implementation easier; they match a token
+ * by its {@link Token.Type} or by its literal.
  *
  * This type of parser is called <em>recursive descent</em>. Each rule in our
  * grammar will have it's own function, and reference to other rules correspond
  * to calling that functions.
+ *
+ * Statements and expressions nested more than {@link #MAX_DEPTH} deep are
+ * parsed with an explicit stack instead (see {@link #parse(Frame)}), so
+ * generated code with very deep nesting doesn't overflow the Java stack.
  */
 public final class Parser {
 
+    private static final int LOGICAL = 1, EQUALITY = 2, ADDITIVE = 3, MULTIPLICATIVE = 4;
+
+    /**
+     * The precedence level of each binary operator by {@link Interner} word
+     * number, 0 for anything else.
+     */
+    private static final byte[] PRECEDENCE = new byte[256];
+
+    private static final int DO = Interner.word("DO", 0, 2), END = Interner.word("END", 0, 3);
+
+    /**
+     * The number of nested statements and expressions parsed by recursion,
+     * which is a few hundred Java stack frames.
+     */
+    private static final int MAX_DEPTH = 64;
+
+    static {
+        String[][] levels = {
+                {"AND", "OR"},
+                {"<", "<=", ">", ">=", "==", "!="},
+                {"+", "-"},
+                {"*", "/"},
+        };
+        for (int level = 0; level < levels.length; level++) {
+            for (String operator : levels[level]) {
+                PRECEDENCE[Interner.word(operator, 0, operator.length())] = (byte) (level + 1);
+            }
+        }
+    }
+
     private final TokenStream tokens;
+    private boolean lazy = false;
+    private boolean recovering = false;
+    private List<ParseException> errors; // null until parseSourceRecovering()
+    private final Listener listener;
+    private final ExpressionFactory expressions; // null unless sharing expressions
+    private int depth = 0; // statements and expressions being parsed by recursion
+    int maxDepth = MAX_DEPTH; // lowered by tests to use the explicit stack everywhere
 
     public Parser(List<Token> tokens) {
+        this(TokenBuffer.of(tokens));
+    }
+
+    public Parser(TokenBuffer tokens) {
+        this(tokens, null, null);
+    }
+
+    /**
+     * Creates a parser which creates expressions with the given factory, so
+     * identical side-effect-free expressions are one shared node. Method
+     * bodies parsed by {@link #parseSourceLazily()} don't share expressions.
+     */
+    public Parser(TokenBuffer tokens, ExpressionFactory expressions) {
+        this(tokens, null, expressions);
+    }
+
+    /**
+     * Creates a parser which tells the listener where each method and method
+     * body statement is. Used by {@link IncrementalParser}.
+     */
+    Parser(TokenBuffer tokens, Listener listener) {
+        this(tokens, listener, null);
+    }
+
+    private Parser(TokenBuffer tokens, Listener listener, ExpressionFactory expressions) {
         this.tokens = new TokenStream(tokens);
+        this.listener = listener;
+        this.expressions = expressions;
+    }
+
+    /**
+     * Returns the position of the next token.
+     */
+    int position() {
+        return tokens.index;
     }
 
     /**
@@ -35,17 +113,164 @@ public final class Parser {
     {
         List <Ast.Field> fields = new ArrayList<>();
         List <Ast.Method> methods = new ArrayList<>();
+        parseSource(fields, methods);
+        return new Ast.Source(fields, methods);
+    }
+
+    /**
+     * Parses the {@code source} rule into the given lists, so that everything
+     * before an error is kept. Used by {@link ParallelParser}.
+     */
+    void parseSource(List<Ast.Field> fields, List<Ast.Method> methods) throws ParseException
+    {
+        if (expressions != null)
+        {
+            expressions.startSource();
+        }
         while(peek("LET")) // if the next token starts a field
         {
             fields.add(parseField());
         }
-        while(peek("DEF"))
+        parseMethods(methods, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Parses methods into the given list until there are no more or the next
+     * token is at the given position.
+     */
+    void parseMethods(List<Ast.Method> methods, int end) throws ParseException
+    {
+        while(tokens.index < end && peek("DEF"))
         {
+            int start = tokens.index;
             methods.add(parseMethod());
+            if (listener != null)
+            {
+                listener.method(start, tokens.index);
+            }
+        }
+    }
+
+    /**
+     * Parses the {@code source} rule like {@link #parseSource()}, but only
+     * parses the header of each method (its name, parameters and types). The
+     * token range of each body is recorded and the statements are parsed the
+     * first time {@link Ast.Method#getStatements()} is used, so tools which
+     * only need signatures never parse bodies. The tokens are kept until then.
+     *
+     * Bodies are skipped by counting {@code DO} and {@code END} (see {@link
+     * #skipBody()}). A body where that count doesn't balance, because it is
+     * invalid or uses a name like {@code END}, is parsed here as it would be
+     * eagerly, so its errors are thrown here. Any other error in a body is
+     * thrown as a {@link ParseException} when the statements are first used.
+     */
+    public Ast.Source parseSourceLazily() throws ParseException
+    {
+        List <Ast.Field> fields = new ArrayList<>();
+        List <Ast.Method> methods = new ArrayList<>();
+        parseSourceLazily(fields, methods);
+        return new Ast.Source(fields, methods);
+    }
+
+    /**
+     * Parses the {@code source} rule lazily into the given lists, see {@link
+     * #parseSource(List, List)}.
+     */
+    void parseSourceLazily(List<Ast.Field> fields, List<Ast.Method> methods) throws ParseException
+    {
+        lazy = true;
+        try
+        {
+            parseSource(fields, methods);
+        }
+        finally
+        {
+            lazy = false;
+        }
+    }
+
+    /**
+     * Parses the {@code source} rule like {@link #parseSource()}, but instead
+     * of stopping at the first syntax error it records the error (see {@link
+     * #getErrors()}), skips ahead and keeps going, so one pass finds every
+     * error. The first error is the one {@link #parseSource()} throws, except
+     * that tokens which are not part of a field or method are also reported.
+     *
+     * Recovery is panic mode: after an error in a method body statement the
+     * parser skips to the next {@code ;} or {@code LET} (which ends or starts a
+     * statement) or the {@code END} of the body, stepping over any blocks
+     * opened by {@code DO}, and after any other error to the next {@code DEF}
+     * or {@code LET}. The returned AST leaves out whatever failed to parse, so
+     * it holds every field, method and statement which is valid. A method
+     * with an error in its header is left out, one with an error in its body
+     * keeps the rest of its statements.
+     */
+    public Ast.Source parseSourceRecovering()
+    {
+        List <Ast.Field> fields = new ArrayList<>();
+        List <Ast.Method> methods = new ArrayList<>();
+        errors = new ArrayList<>();
+        if (expressions != null)
+        {
+            expressions.startSource();
+        }
+        recovering = true;
+        try
+        {
+            parseSourceRecovering(fields, methods);
+        }
+        finally
+        {
+            recovering = false;
         }
         return new Ast.Source(fields, methods);
     }
 
+    private void parseSourceRecovering(List<Ast.Field> fields, List<Ast.Method> methods)
+    {
+        while (tokens.has(0))
+        {
+            int start = tokens.index;
+            try
+            {
+                if (peek("LET"))
+                {
+                    fields.add(parseField());
+                }
+                else if (peek("DEF"))
+                {
+                    methods.add(parseMethod());
+                }
+                else
+                {
+                    throw error("Expected \"LET\" or \"DEF\"");
+                }
+            }
+            catch (ParseException e)
+            {
+                errors.add(e);
+                depth = 0;
+                if (expressions != null)
+                {
+                    expressions.exitScopes(0);
+                }
+                if (tokens.index == start)
+                {
+                    tokens.advance();
+                }
+                synchronize();
+            }
+        }
+    }
+
+    /**
+     * Returns the errors found by {@link #parseSourceRecovering()}, in order.
+     */
+    public List<ParseException> getErrors()
+    {
+        return errors;
+    }
+
     /**
      * Parses the {@code field} rule. This method should only be called if the
      * next tokens start a field, aka {@code LET}.
@@ -54,38 +279,38 @@ public final class Parser {
     {
         if(match("LET", Token.Type.IDENTIFIER))
         {
-            String name = tokens.get(-1).getLiteral();
+            String name = tokens.literal(-1);
             if (match(":", Token.Type.IDENTIFIER))
             {
-                String typeName = tokens.get(-1).getLiteral();
+                String typeName = tokens.literal(-1);
 
                 if(match("="))
                 {
                     Ast.Expr expr = parseExpression();
                     if(match(";"))
                     {
+                        declare(name);
                         return new Ast.Field(name, typeName, Optional.of(expr));
                         //return new Ast.Field(name, Optional.of(expr)); // old return statement
                     }
                     else
                     {
-                        int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-                        throw new ParseException("Field Missing Semi-Colon", index);
+                        throw missing("Field Missing Semi-Colon");
                     }
                 }
                 else if(match(";"))
                 {
+                    declare(name);
                     return new Ast.Field(name, typeName, Optional.empty());
                     //return new Ast.Field(name, Optional.empty()); // old return
                 }
             }
             if (match(";"))
             {
-                throw new ParseException("no type or value", tokens.get(-1).getIndex());
+                throw new ParseException("no type or value", tokens.index(-1));
             }
         }
-        throw new ParseException("invalid field", tokens.get(1).getIndex());
-
+        throw errorAt(1, "invalid field");
     }
 
     /**
@@ -95,7 +320,7 @@ public final class Parser {
     public Ast.Method parseMethod() throws ParseException {
 
         List<String> parameters = new ArrayList<>();
-        List<Ast.Stmt> statements = new ArrayList<>();
+        List<Ast.Stmt> statements;
         List<String> parameterTypes = new ArrayList<>();
         Optional<String> returnTypeName = Optional.empty();
         if(match("DEF")) {
@@ -103,13 +328,13 @@ public final class Parser {
             {
                 if (match("("))
                 {
-                    String name = tokens.get(-2).getLiteral();
+                    String name = tokens.literal(-2);
                     if(match(Token.Type.IDENTIFIER)) // if there is something in the paren
                     {
                         if(match(":", Token.Type.IDENTIFIER))
                         {
-                            parameters.add(tokens.get(-3).getLiteral());
-                            parameterTypes.add(tokens.get(-1).getLiteral());
+                            parameters.add(tokens.literal(-3));
+                            parameterTypes.add(tokens.literal(-1));
 
                             while(match(","))
                             {
@@ -117,24 +342,24 @@ public final class Parser {
                                 {
                                     if (match(":", Token.Type.IDENTIFIER))
                                     {
-                                        parameters.add(tokens.get(-3).getLiteral());
-                                        parameterTypes.add(tokens.get(-1).getLiteral());
+                                        parameters.add(tokens.literal(-3));
+                                        parameterTypes.add(tokens.literal(-1));
                                     }
                                     else
                                     {
-                                        throw new ParseException("expected type", tokens.get(0).getIndex());
+                                        throw error("expected type");
                                     }
 
                                 }
                                 else
                                 {
-                                    throw new ParseException("invalid identifier", tokens.get(0).getIndex());
+                                    throw error("invalid identifier");
                                 }
                             }
                         }
                         else
                         {
-                            throw new ParseException("expected type", tokens.get(0).getIndex());
+                            throw error("expected type");
                         }
 
                     }
@@ -144,84 +369,238 @@ public final class Parser {
                         {
                             if (match(Token.Type.IDENTIFIER))
                             {
-                                returnTypeName = Optional.ofNullable(tokens.get(-1).getLiteral());
+                                returnTypeName = Optional.ofNullable(tokens.literal(-1));
                             }
                             else
                             {
-                                throw new ParseException("invalid identifier", tokens.get(0).getIndex());
+                                throw error("invalid identifier");
                             }
 
                         }
                         if (match("DO"))
                         {
-
-                            while (!peek("END") && tokens.has(2))
+                            enterScope();
+                            for (String parameter : parameters)
                             {
-                                statements.add(parseStatement());
+                                declare(parameter);
                             }
-                            if (match("END") && !tokens.has(0))
+                            int start = tokens.index;
+                            int end = lazy ? skipBody() : -1;
+                            if (end >= 0)
                             {
-                                return new Ast.Method(name, parameters, parameterTypes, returnTypeName, statements);
-                                //return new Ast.Method(name, parameters, statements);
+                                statements = new LazyStatements(tokens.tokens, start, end);
                             }
                             else
                             {
-                                int index = (tokens.get(1).getIndex() + tokens.get(1).getLiteral().length());
-                                throw new ParseException("Method Missing \"END\"", index);
+                                tokens.index = start;
+                                statements = parseStatements();
                             }
+                            if (!(match("END") && (!tokens.has(0) || peek("DEF"))))
+                            {
+                                recover(errorAfter(1, "Method Missing \"END\""));
+                            }
+                            exitScope();
+                            return new Ast.Method(name, parameters, parameterTypes, returnTypeName, statements);
+                            //return new Ast.Method(name, parameters, statements);
                         }
                         else
                         {
-                            if (tokens.has(0))
-                            {
-                                int index = (tokens.get(0).getIndex());// + tokens.get(-1).getLiteral().length());
-                                throw new ParseException("Expected \"DO\"", index);
-                            }
-                            else
-                            {
-                                int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-                                throw new ParseException("Expected \"DO\"", index);
-                            }
+                            throw error("Expected \"DO\"");
                         }
                     }
                     else
                     {
                         if (tokens.has(0))
                         {
-                            int index = (tokens.get(-1).getIndex());// + tokens.get(-1).getLiteral().length());
+                            int index = (tokens.index(-1));// + tokens.literal(-1).length());
                             throw new ParseException("Method missing Closing paren", index);
                         }
                         else
                         {
-                            int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-                            throw new ParseException("Method missing Closing paren", index);
+                            throw missing("Method missing Closing paren");
                         }
                     }
                 }
                 else
                 {
-                    if (tokens.has(0))
-                    {
-                        int index = (tokens.get(0).getIndex());// + tokens.get(-1).getLiteral().length());
-                        throw new ParseException("Method missing opening paren", index);
-                    }
-                    else
-                    {
-                        int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-                        throw new ParseException("Method missing opening paren", index);
-                    }
+                    throw error("Method missing opening paren");
 
                 }
             }
             else
             {
-                int index = (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                throw new ParseException("Method missing identifier", index);
+                throw missing("Method missing identifier");
+            }
+        }
+
+        throw errorAt(1, "Invalid Method");
+    }
+
+    /**
+     * Parses the statements of a method body, up to (but not including) its
+     * {@code END}.
+     */
+    private List<Ast.Stmt> parseStatements() throws ParseException
+    {
+        return parseStatements(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Parses method body statements like {@link #parseStatements()}, but
+     * stops once the next token is at the given position.
+     */
+    List<Ast.Stmt> parseStatements(int end) throws ParseException
+    {
+        List<Ast.Stmt> statements = new ArrayList<>();
+        int scopes = expressions == null ? 0 : expressions.scopes();
+        while (tokens.index < end && !peek("END") && tokens.has(2))
+        {
+            int start = tokens.index;
+            try
+            {
+                statements.add(parseStatement());
+            }
+            catch (ParseException e)
+            {
+                if (!recovering)
+                {
+                    throw e;
+                }
+                errors.add(e);
+                depth = 0;
+                if (expressions != null)
+                {
+                    expressions.exitScopes(scopes);
+                }
+                if (synchronizeStatement(start))
+                {
+                    continue;
+                }
+                break;
+            }
+            if (listener != null)
+            {
+                listener.statement(start, tokens.index);
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Throws the error, or if recovering records it and skips to the next
+     * field or method.
+     */
+    private void recover(ParseException error) throws ParseException
+    {
+        if (!recovering)
+        {
+            throw error;
+        }
+        errors.add(error);
+        synchronize();
+    }
+
+    /**
+     * Skips to the next {@code DEF}, or {@code LET} outside of a block.
+     */
+    private void synchronize()
+    {
+        int depth = 0;
+        while (tokens.has(0) && !peek("DEF") && !(depth == 0 && peek("LET")))
+        {
+            if (peek("DO"))
+            {
+                depth++;
+            }
+            else if (peek("END") && depth > 0)
+            {
+                depth--;
+            }
+            tokens.advance();
+        }
+    }
+
+    /**
+     * Skips the rest of a method body statement which failed to parse, given
+     * where it started: up to and including the next {@code ;} or the {@code
+     * END} which closes a block the statement opened, or up to the next
+     * {@code LET} or the {@code END} of the body. Returns false if it reached
+     * a {@code DEF} or the end of the tokens instead, so the body is missing
+     * its {@code END}.
+     */
+    private boolean synchronizeStatement(int start)
+    {
+        if (tokens.index == start)
+        {
+            tokens.advance();
+        }
+        int depth = 0;
+        for (int i = start; i < tokens.index; i++)
+        {
+            if (tokens.tokens.word(i) == DO)
+            {
+                depth++;
+            }
+            else if (tokens.tokens.word(i) == END && depth > 0)
+            {
+                depth--;
+            }
+        }
+        while (tokens.has(0) && !peek("DEF"))
+        {
+            if (depth == 0 && (peek("LET") || peek("END")))
+            {
+                return true;
+            }
+            if (depth == 0 && match(";"))
+            {
+                return true;
+            }
+            if (peek("DO"))
+            {
+                depth++;
+            }
+            else if (peek("END") && --depth == 0)
+            {
+                tokens.advance();
+                return true;
             }
+            tokens.advance();
         }
+        return false;
+    }
 
-        //System.out.println(tokens.get(1).getIndex() + tokens.get(1).getLiteral().length());
-        throw new ParseException("Invalid Method", tokens.get(1).getIndex());
+    /**
+     * Advances past a method body without parsing it, to the {@code END}
+     * which closes it, and returns the position of that {@code END}. Every
+     * block statement is opened by a {@code DO} and closed by an {@code END},
+     * but names can be spelled the same ({@code obj.END}), so the count is
+     * only trusted at the first {@code END} which can end a method, one
+     * followed by the end of the source or by {@code DEF name(}, which no
+     * statement starts with. Returns -1 if the count doesn't balance there, or
+     * there is no such {@code END}, and the body has to be parsed.
+     */
+    private int skipBody()
+    {
+        int depth = 1;
+        while (tokens.has(0))
+        {
+            if (peek("DO"))
+            {
+                depth++;
+            }
+            else if (peek("END"))
+            {
+                depth--;
+                if (!tokens.has(1) || tokens.has(3) && tokens.literalEquals(1, "DEF")
+                        && tokens.type(2) == Token.Type.IDENTIFIER && tokens.literalEquals(3, "("))
+                {
+                    return depth == 0 ? tokens.index : -1;
+                }
+            }
+            tokens.advance();
+        }
+        return -1;
     }
 
     /**
@@ -230,6 +609,18 @@ public final class Parser {
      * statement, then it is an expression/assignment statement.
      */
     public Ast.Stmt parseStatement() throws ParseException
+    {
+        if (depth >= maxDepth)
+        {
+            return (Ast.Stmt) parse(new StatementFrame());
+        }
+        depth++;
+        Ast.Stmt statement = parseStatementRecursively();
+        depth--;
+        return statement;
+    }
+
+    private Ast.Stmt parseStatementRecursively() throws ParseException
     {
         if(peek("LET"))
         {
@@ -256,26 +647,9 @@ public final class Parser {
             Ast.Stmt.Expr receiver = parseExpression();
             if (match("="))
             {
-                Ast.Expr value = parseExpression();
-                if(match(";"))
-                {
-                    return new Ast.Stmt.Assignment(receiver, value);
-                }
-                else
-                {
-                    int index = tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-                    throw new ParseException("Missing semi-colon", index);
-                }
-            }
-            if (match(";"))
-            {
-                return new Ast.Stmt.Expression(receiver);
-            }
-            else
-            {
-                int index = tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-                throw new ParseException("Missing semicolon", index);
+                return endAssignment(receiver, parseExpression());
             }
+            return endExpressionStatement(receiver);
         }
     }
 
@@ -286,48 +660,13 @@ public final class Parser {
      */
     public Ast.Stmt.Declaration parseDeclarationStatement() throws ParseException
     {
-        if(match("LET", Token.Type.IDENTIFIER))
+        String name = declarationName();
+        Optional<String> typeName = declarationType();
+        if(match("="))
         {
-            String name = tokens.get(-1).getLiteral();
-            Optional<String> typeName = Optional.empty();
-            if (match(":"))
-            {
-                if (match(Token.Type.IDENTIFIER))
-                {
-                    typeName = Optional.ofNullable(tokens.get(-1).getLiteral());
-                }
-                else
-                {
-                    throw new ParseException("invalid type name identifier", tokens.get(0).getIndex());
-                }
-            }
-
-            if(match("="))
-            {
-                Ast.Expr expr = parseExpression();
-                if(match(";"))
-                {
-                    return new Ast.Stmt.Declaration(name, typeName, Optional.of(expr));
-                    //return new Ast.Stmt.Declaration(name, Optional.of(expr));
-                }
-                else
-                {
-                    int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-                    throw new ParseException("Field Missing Semi-Colon", index);
-                }
-            }
-            if(match(";"))
-            {
-                return new Ast.Stmt.Declaration(name, typeName, Optional.empty());
-                //return new Ast.Stmt.Declaration(name, Optional.empty());
-            }
-            else
-            {
-                int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-                throw new ParseException("Declaration Missing Semi-Colon", index);
-            }
+            return endDeclaration(name, typeName, Optional.of(parseExpression()));
         }
-        throw new ParseException("invalid declaration statement", tokens.get(-1).getIndex());
+        return endDeclaration(name, typeName, Optional.empty());
     }
 
     /**
@@ -337,63 +676,24 @@ public final class Parser {
      */
     public Ast.Stmt.If parseIfStatement() throws ParseException
     {
-        List<Ast.Stmt> doStatements = new ArrayList<>();
-        List<Ast.Stmt> elseStatements = new ArrayList<>();
         if (match("IF"))
         {
             Ast.Expr expr = parseExpression();
-            if (match("DO"))
+            startBlock();
+            List<Ast.Stmt> doStatements = new ArrayList<>();
+            List<Ast.Stmt> elseStatements = new ArrayList<>();
+            while (hasThenStatement())
             {
-                while (!peek("ELSE") && !peek("END"))
-                {
-                    doStatements.add(parseStatement());
-                }
-                while(match("ELSE"))
-                {
-                    elseStatements.add(parseStatement());
-                }
-                if (match("END"))
-                {
-                    return new Ast.Stmt.If(expr, doStatements, elseStatements);
-                }
-                else
-                {
-                    if (tokens.has(0))
-                    {
-                        int index = (tokens.get(0).getIndex());// + tokens.get(-1).getLiteral().length());
-                        throw new ParseException("Expected \"END\"", index);
-                    }
-                    else
-                    {
-                        int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-                        throw new ParseException("Expected \"END\"", index);
-                    }
-                }
+                doStatements.add(parseStatement());
             }
-            else
+            startElse();
+            while(match("ELSE"))
             {
-                if (tokens.has(0))
-                {
-                    int index = (tokens.get(0).getIndex());// + tokens.get(-1).getLiteral().length());
-                    throw new ParseException("Expected \"DO\"", index);
-                }
-                else
-                {
-                    int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-                    throw new ParseException("Expected \"DO\"", index);
-                }
+                elseStatements.add(parseStatement());
             }
+            return endIf(expr, doStatements, elseStatements);
         }
-        if (tokens.has(0))
-        {
-            int index = (tokens.get(0).getIndex());// + tokens.get(-1).getLiteral().length());
-            throw new ParseException("Invalid If Statement", index);
-        }
-        else
-        {
-            int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-            throw new ParseException("Invalid If Statement", index);
-        }
+        throw error("Invalid If Statement");
     }
 
     /**
@@ -405,82 +705,18 @@ public final class Parser {
     {
         if (match("FOR"))
         {
-            if (match(Token.Type.IDENTIFIER))
-            {
-                if (match("IN"))
-                {
-                    List<Ast.Stmt> statements = new ArrayList<>();
-                    String name = tokens.get(-2).getLiteral();
-                    Ast.Expr expr = parseExpression();
-                    if (match("DO"))
-                    {
-                        while (!peek("END") && tokens.has(0))
-                        {
-                            statements.add(parseStatement());
-                        }
-                        if (match("END"))
-                        {
-                            return new Ast.Stmt.For(name, expr, statements);
-                        }
-                        else
-                        {
-                            int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-                            throw new ParseException("Expected \"END\"", index);
-                        }
-                    }
-                    else
-                    {
-                        if (tokens.has(0))
-                        {
-                            int index = (tokens.get(0).getIndex());// + tokens.get(-1).getLiteral().length());
-                            throw new ParseException("Expected \"DO\"", index);
-                        }
-                        else
-                        {
-                            int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-                            throw new ParseException("Expected \"DO\"", index);
-                        }
-                    }
-                }
-                else // expected IN
-                {
-                    if (tokens.has(0))
-                    {
-                        int index = (tokens.get(0).getIndex());// + tokens.get(-1).getLiteral().length());
-                        throw new ParseException("Expected \"IN\"", index);
-                    }
-                    else
-                    {
-                        int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-                        throw new ParseException("Expected \"IN\"", index);
-                    }
-                }
-            }
-            else //invalid identifier
+            String name = forName();
+            Ast.Expr expr = parseExpression();
+            startBlock();
+            declare(name);
+            List<Ast.Stmt> statements = new ArrayList<>();
+            while (hasForStatement())
             {
-                if (tokens.has(0))
-                {
-                    int index = (tokens.get(0).getIndex());// + tokens.get(-1).getLiteral().length());
-                    throw new ParseException("Invalid Identifier", index);
-                }
-                else
-                {
-                    int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-                    throw new ParseException("Invalid Identifier", index);
-                }
+                statements.add(parseStatement());
             }
+            return endFor(name, expr, statements);
         }
-
-        if (tokens.has(0))
-        {
-            int index = (tokens.get(0).getIndex());// + tokens.get(-1).getLiteral().length());
-            throw new ParseException("Invalid FOR statement", index);
-        }
-        else
-        {
-            int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-            throw new ParseException("Invalid FOR statement", index);
-        }
+        throw error("Invalid FOR statement");
     }
 
     /**
@@ -492,48 +728,16 @@ public final class Parser {
     {
         if (match("WHILE"))
         {
-            List<Ast.Stmt> statements = new ArrayList<>();
             Ast.Expr expr = parseExpression();
-            if (match("DO"))
-            {
-                while (!peek("END") && tokens.has(2))
-                {
-                    statements.add(parseStatement());
-                }
-                if (match("END"))
-                {
-                    return new Ast.Stmt.While(expr, statements);
-                }
-                else
-                {
-                    int index = (tokens.get(1).getIndex()) + tokens.get(1).getLiteral().length();
-                    throw new ParseException("Expected \"END\"", index);
-                }
-            }
-            else
+            startBlock();
+            List<Ast.Stmt> statements = new ArrayList<>();
+            while (hasWhileStatement())
             {
-                if (tokens.has(0))
-                {
-                    int index = (tokens.get(0).getIndex());// + tokens.get(-1).getLiteral().length());
-                    throw new ParseException("Expected \"DO\"", index);
-                }
-                else
-                {
-                    int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-                    throw new ParseException("Expected \"DO\"", index);
-                }
+                statements.add(parseStatement());
             }
+            return endWhile(expr, statements);
         }
-        if (tokens.has(0))
-        {
-            int index = (tokens.get(0).getIndex());// + tokens.get(-1).getLiteral().length());
-            throw new ParseException("Invalid while statement", index);
-        }
-        else
-        {
-            int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-            throw new ParseException("Invalid while statement", index);
-        }
+        throw error("Invalid while statement");
     }
 
     /**
@@ -545,18 +749,155 @@ public final class Parser {
     {
         if (match("RETURN"))
         {
-            Ast.Expr expr = parseExpression();
-            if (match(";"))
-            {
-                return new Ast.Stmt.Return(expr);
-            }
-            else
-            {
-                int index = (tokens.get(-1).getIndex()) + tokens.get(-1).getLiteral().length();
-                throw new ParseException("Expected semicolon", index);
-            }
+            return endReturn(parseExpression());
+        }
+        throw error("Invalid return statement"); //TODO
+    }
+
+    /*
+     * The steps of the statement rules between their nested statements and
+     * expressions, shared by the methods above and StatementFrame so both
+     * match the same tokens, throw the same errors and build the same AST.
+     */
+
+    private Ast.Stmt endAssignment(Ast.Expr receiver, Ast.Expr value) throws ParseException
+    {
+        if (!match(";"))
+        {
+            throw missing("Missing semi-colon");
+        }
+        return new Ast.Stmt.Assignment(receiver, value);
+    }
+
+    private Ast.Stmt endExpressionStatement(Ast.Expr expr) throws ParseException
+    {
+        if (!match(";"))
+        {
+            throw missing("Missing semicolon");
+        }
+        return new Ast.Stmt.Expression(expr);
+    }
+
+    private String declarationName() throws ParseException
+    {
+        if (!match("LET", Token.Type.IDENTIFIER))
+        {
+            throw new ParseException("invalid declaration statement", tokens.index(-1));
+        }
+        return tokens.literal(-1);
+    }
+
+    private Optional<String> declarationType() throws ParseException
+    {
+        if (!match(":"))
+        {
+            return Optional.empty();
+        }
+        if (!match(Token.Type.IDENTIFIER))
+        {
+            throw error("invalid type name identifier");
+        }
+        return Optional.ofNullable(tokens.literal(-1));
+    }
+
+    private Ast.Stmt.Declaration endDeclaration(String name, Optional<String> typeName, Optional<Ast.Expr> value) throws ParseException
+    {
+        if (!match(";"))
+        {
+            throw missing(value.isPresent() ? "Field Missing Semi-Colon" : "Declaration Missing Semi-Colon");
+        }
+        declare(name);
+        return new Ast.Stmt.Declaration(name, typeName, value);
+    }
+
+    /**
+     * Matches the {@code DO} which opens the block of an if, for or while
+     * statement, and enters its scope.
+     */
+    private void startBlock() throws ParseException
+    {
+        if (!match("DO"))
+        {
+            throw error("Expected \"DO\"");
+        }
+        enterScope();
+    }
+
+    private boolean hasThenStatement()
+    {
+        return !peek("ELSE") && !peek("END");
+    }
+
+    private void startElse()
+    {
+        exitScope();
+        enterScope();
+    }
+
+    private Ast.Stmt.If endIf(Ast.Expr condition, List<Ast.Stmt> thenStatements, List<Ast.Stmt> elseStatements) throws ParseException
+    {
+        exitScope();
+        if (!match("END"))
+        {
+            throw error("Expected \"END\"");
+        }
+        return new Ast.Stmt.If(condition, thenStatements, elseStatements);
+    }
+
+    /**
+     * Matches the name of a for statement's variable and the {@code IN}
+     * after it, and returns the name.
+     */
+    private String forName() throws ParseException
+    {
+        if (!match(Token.Type.IDENTIFIER))
+        {
+            throw error("Invalid Identifier");
+        }
+        if (!match("IN"))
+        {
+            throw error("Expected \"IN\"");
+        }
+        return tokens.literal(-2);
+    }
+
+    private boolean hasForStatement()
+    {
+        return !peek("END") && tokens.has(0);
+    }
+
+    private Ast.Stmt.For endFor(String name, Ast.Expr value, List<Ast.Stmt> statements) throws ParseException
+    {
+        exitScope();
+        if (!match("END"))
+        {
+            throw missing("Expected \"END\"");
+        }
+        return new Ast.Stmt.For(name, value, statements);
+    }
+
+    private boolean hasWhileStatement()
+    {
+        return !peek("END") && tokens.has(2);
+    }
+
+    private Ast.Stmt.While endWhile(Ast.Expr condition, List<Ast.Stmt> statements) throws ParseException
+    {
+        exitScope();
+        if (!match("END"))
+        {
+            throw errorAfter(1, "Expected \"END\"");
+        }
+        return new Ast.Stmt.While(condition, statements);
+    }
+
+    private Ast.Stmt.Return endReturn(Ast.Expr value) throws ParseException
+    {
+        if (!match(";"))
+        {
+            throw missing("Expected semicolon");
         }
-        throw new ParseException("Invalid return statement", tokens.get(0).getIndex()); //TODO
+        return new Ast.Stmt.Return(value);
     }
 
     /**
@@ -567,86 +908,67 @@ public final class Parser {
     }
 
     /**
-     * Parses the {@code logical-expression} rule.
+     * Parses an expression nested in a group or the arguments of a function,
+     * which is the only way expressions nest. This is only counted towards
+     * the depth here, so expressions without any aren't slowed down.
      */
-    public Ast.Expr parseLogicalExpression() throws ParseException {
-        Ast.Expr expr = parseEqualityExpression();
-        while(match("AND") || match("OR"))
+    private Ast.Expr parseNestedExpression() throws ParseException
+    {
+        if (depth >= maxDepth)
         {
-            String operator = tokens.get(-1).getLiteral();
-            if(tokens.has(0))
-            {
-                Ast.Expr right = parseEqualityExpression();
-                expr = new Ast.Expr.Binary(operator, expr, right);
-            }
-            else
-            {
-                throw new ParseException("Missing Operand",tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            }
-
+            return (Ast.Expr) parse(new BinaryFrame(LOGICAL));
         }
+        depth++;
+        Ast.Expr expr = parseLogicalExpression();
+        depth--;
         return expr;
     }
 
+    /**
+     * Parses the {@code logical-expression} rule.
+     */
+    public Ast.Expr parseLogicalExpression() throws ParseException {
+        return parseBinaryExpression(LOGICAL);
+    }
+
     /**
      * Parses the {@code equality-expression} rule.
      */
     public Ast.Expr parseEqualityExpression() throws ParseException {
-        Ast.Expr expr = parseAdditiveExpression();
-        while(match("<") || match("<=") || match(">") || match(">=") || match("==") || match("!="))
-        {
-            String operator = tokens.get(-1).getLiteral();
-            if(tokens.has(0))
-            {
-                Ast.Expr right = parseAdditiveExpression();
-                expr = new Ast.Expr.Binary(operator, expr, right);
-            }
-            else
-            {
-                throw new ParseException("Missing Operand",tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            }
-        }
-        return expr;
+        return parseBinaryExpression(EQUALITY);
     }
 
     /**
      * Parses the {@code additive-expression} rule.
      */
     public Ast.Expr parseAdditiveExpression() throws ParseException {
-        Ast.Expr expr = parseMultiplicativeExpression();
-        while (match("+") || match("-"))
-        {
-            String operator = tokens.get(-1).getLiteral();
-            if(tokens.has(0))
-            {
-                Ast.Expr right = parseMultiplicativeExpression();
-                expr = new Ast.Expr.Binary(operator, expr, right);
-            }
-            else
-            {
-                throw new ParseException("Missing Operand", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            }
-        }
-        return expr;
+        return parseBinaryExpression(ADDITIVE);
     }
 
     /**
      * Parses the {@code multiplicative-expression} rule.
      */
     public Ast.Expr parseMultiplicativeExpression() throws ParseException {
+        return parseBinaryExpression(MULTIPLICATIVE);
+    }
+
+    /**
+     * Parses the binary expression rules from the given precedence level
+     * down, by precedence climbing: the right operand of an operator is parsed
+     * one level above the operator, so operators of the same level are left
+     * associative. This builds the same trees as one method per level, but an
+     * operand is one call to {@link #parseSecondaryExpression()} and one table
+     * lookup instead of a trip through every level.
+     */
+    private Ast.Expr parseBinaryExpression(int level) throws ParseException
+    {
         Ast.Expr expr = parseSecondaryExpression();
-        while(match("*") || match("/"))
+        int precedence;
+        while((precedence = matchOperator(level)) != 0)
         {
-            String operator = tokens.get(-1).getLiteral();
-            if(tokens.has(0))
-            {
-                Ast.Expr right = parseSecondaryExpression();
-                expr = new Ast.Expr.Binary(operator, expr, right);
-            }
-            else
-            {
-                throw new ParseException("Missing Operand", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            }
+            String operator = tokens.literal(-1);
+            Ast.Expr right = parseBinaryExpression(precedence + 1);
+            expr = binary(operator, expr, right);
         }
         return expr;
     }
@@ -657,56 +979,25 @@ public final class Parser {
     public Ast.Expr parseSecondaryExpression() throws ParseException {
         Ast.Expr expr = parsePrimaryExpression();
 
-        while(match("."))
+        String methodName;
+        while((methodName = matchMember()) != null)
         {
-            if(match(Token.Type.IDENTIFIER))
+            if(match("("))
             {
-                String methodName = tokens.get(-1).getLiteral();
-                List <Ast.Expr> exprs = new ArrayList<>();
-
-                if(match("("))
-                {
-
-                    if(match(")")) // if the parenthesis are empty
-                    {
-                        exprs = Arrays.asList();
-                        expr = new Ast.Expr.Function(Optional.of(expr), methodName ,exprs);
-                        continue;
-                    }
-                    else // the paren are not empty
-                    {
-                        exprs = new ArrayList<>(exprs);
-                        exprs.add(parseExpression());
-                        while(match(","))
-                        {
-                            exprs.add(parseExpression());
-                        }
-                        if(match(")")) // if the parenthesis are empty
-                        {
-                            return new Ast.Expr.Function(Optional.of(expr), methodName ,exprs);
-                        }
-                        else
-                        {
-                            throw new ParseException("Invalid Identifier.", tokens.get(-1).getIndex());
-                        }
-                    }
-                }
-                if(Character.isLetter(tokens.get(-1).getLiteral().charAt(0)) || tokens.get(-1).getLiteral().charAt(0) == '_')
+                if(match(")")) // if the parenthesis are empty
                 {
-
-                    expr = new Ast.Expr.Access(Optional.of(expr), tokens.get(-1).getLiteral());
+                    expr = new Ast.Expr.Function(Optional.of(expr), methodName, Arrays.asList());
+                    continue;
                 }
-                else
+                List<Ast.Expr> exprs = new ArrayList<>();
+                exprs.add(parseNestedExpression());
+                while(match(","))
                 {
-
-                    throw new ParseException("Invalid Identifier.", tokens.get(-1).getIndex());
+                    exprs.add(parseNestedExpression());
                 }
-
-            }
-            else
-            {
-                throw new ParseException("Invalid Identifier.", tokens.get(-1).getIndex());
+                return endMethodCall(expr, methodName, exprs);
             }
+            expr = field(expr, methodName);
         }
         return expr;
 
@@ -719,166 +1010,693 @@ public final class Parser {
      * not strictly necessary.
      */
     public Ast.Expr parsePrimaryExpression() throws ParseException {
-        if(match("TRUE"))
-        {
-            return new Ast.Expr.Literal(true);
-        }
-        else if(match("FALSE"))
-        {
-            return new Ast.Expr.Literal(false);
-        }
-        else if(match("NIL"))
-        {
-            return new Ast.Expr.Literal(null);
-        }
-        else if(match(Token.Type.INTEGER))
-        {
-            return new Ast.Expr.Literal(new BigInteger(tokens.get(-1).getLiteral()));
-        }
-        else if(match(Token.Type.DECIMAL))
-        {
-            return new Ast.Expr.Literal(new BigDecimal(tokens.get(-1).getLiteral()));
-        }
-        else if(match(Token.Type.CHARACTER))
-        {
-            String charString = tokens.get(-1).getLiteral();
-            charString = charString.substring(1, charString.length() - 1);
-            charString = charString.replace("\\b", "\b");
-            charString = charString.replace("\\n", "\n");
-            charString = charString.replace("\\r", "\r");
-            charString = charString.replace("\\t", "\t");
-            charString = charString.replace("\\'", "\'");
-            charString = charString.replace("\\\"", "\"");
-            charString = charString.replace("\\\\", "\\");
-            char newChar = charString.charAt(0);
-            return new Ast.Expr.Literal(newChar);
-        }
-        else if(match(Token.Type.STRING))
+        Ast.Expr literal = parseLiteral();
+        if(literal != null)
         {
-            String newString = tokens.get(-1).getLiteral();
-            newString = newString.substring(1, newString.length() - 1);
-            newString = newString.replace("\\b", "\b");
-            newString = newString.replace("\\n", "\n");
-            newString = newString.replace("\\r", "\r");
-            newString = newString.replace("\\t", "\t");
-            newString = newString.replace("\\'", "\'");
-            newString = newString.replace("\\\"", "\"");
-            newString = newString.replace("\\\\", "\\");
-            return new Ast.Expr.Literal(newString);
+            return literal;
         }
         else if(match(Token.Type.IDENTIFIER)) //variable
         {
-            String functionName = tokens.get(-1).getLiteral();
+            String functionName = tokens.literal(-1);
 
-            if(match("(")) // TODO: handle function case if next token is '('
+            if(match("("))
             {
-                List <Ast.Expr> exprs;
-                exprs = Arrays.asList();
                 if(match(")")) // if the parenthesis are empty
                 {
-
-                    return new Ast.Expr.Function(Optional.empty(), functionName, exprs);
+                    return new Ast.Expr.Function(Optional.empty(), functionName, Arrays.asList());
                 }
-                exprs = new ArrayList<>(exprs);
-                exprs.add(parseExpression());
+                List<Ast.Expr> exprs = new ArrayList<>();
+                exprs.add(parseNestedExpression());
                 while(match(","))
                 {
-                    exprs.add(parseExpression());
-                }
-                if(match(")")) // if the parenthesis are not empty
-                {
-                    return new Ast.Expr.Function(Optional.empty(), functionName, exprs);
-                }
-                else
-                {
-                    int index = (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                    throw new ParseException("Expected Closing Paren.", index);
+                    exprs.add(parseNestedExpression());
                 }
+                return endFunctionCall(functionName, exprs);
             }
-            return new Ast.Expr.Access(Optional.empty(), functionName); // obj.method() obj is receiver "Alan Kay message passing"
+            return access(Optional.empty(), functionName); // obj.method() obj is receiver "Alan Kay message passing"
 
         }
         else if(match("(")) // grouped expression
         {
-            Ast.Expr expr = parseExpression();
-            if(!match(")")) // if we don't find closing paren
-            {
-                int index = (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                throw new ParseException("Expected closing parenthesis.", index);
-            }
-            return new Ast.Expr.Group(expr);
+            return endGroup(parseNestedExpression());
         }
         else
         {
-            if(tokens.get(0).getLiteral().length() == 1) //invalid expression
-            {
-                throw new ParseException("Invalid Expression", 0);
-            }
-            throw new ParseException("Invalid primary expression.", (tokens.get(0).getIndex() + tokens.get(0).getLiteral().length()));
+            throw invalidPrimary();
         }
     }
 
+    /*
+     * The steps of the expression rules between their nested expressions,
+     * shared by the methods above and the frames like the statement steps.
+     */
+
     /**
-     * As in the lexer, returns {@code true} if the current sequence of tokens
-     * matches the given patterns. Unlike the lexer, the pattern is not a regex;
-     * instead it is either a {@link Token.Type}, which matches if the token's
-     * type is the same, or a {@link String}, which matches if the token's
-     * literal is the same.
-     *
-     * In other words, {@code Token(IDENTIFIER, "literal")} is matched by both
-     * {@code peek(Token.Type.IDENTIFIER)} and {@code peek("literal")}.
+     * Matches a binary operator of the given precedence level or above and
+     * returns its level, or returns 0 if the next token isn't one.
      */
-    private boolean peek(Object... patterns) {
-        for (int i = 0; i < patterns.length; i++)
+    private int matchOperator(int level) throws ParseException
+    {
+        int precedence;
+        if(!tokens.has(0) || (precedence = PRECEDENCE[tokens.word(0)]) < level)
         {
-            if (!tokens.has(i))
-            {
-                return false;
-            }
-            else if(patterns[i] instanceof Token.Type)
+            return 0;
+        }
+        tokens.advance();
+        if(!tokens.has(0))
+        {
+            throw missing("Missing Operand");
+        }
+        return precedence;
+    }
+
+    /**
+     * Matches a {@code .} and the name after it and returns the name, or
+     * returns null if the next token isn't a {@code .}.
+     */
+    private String matchMember() throws ParseException
+    {
+        if(!match("."))
+        {
+            return null;
+        }
+        if(!match(Token.Type.IDENTIFIER))
+        {
+            throw new ParseException("Invalid Identifier.", tokens.index(-1));
+        }
+        return tokens.literal(-1);
+    }
+
+    private Ast.Expr field(Ast.Expr receiver, String name) throws ParseException
+    {
+        if(!Character.isLetter(name.charAt(0)) && name.charAt(0) != '_')
+        {
+            throw new ParseException("Invalid Identifier.", tokens.index(-1));
+        }
+        return access(Optional.of(receiver), name);
+    }
+
+    private Ast.Expr endMethodCall(Ast.Expr receiver, String name, List<Ast.Expr> arguments) throws ParseException
+    {
+        if(!match(")"))
+        {
+            throw new ParseException("Invalid Identifier.", tokens.index(-1));
+        }
+        return new Ast.Expr.Function(Optional.of(receiver), name, arguments);
+    }
+
+    private Ast.Expr endFunctionCall(String name, List<Ast.Expr> arguments) throws ParseException
+    {
+        if(!match(")"))
+        {
+            throw missing("Expected Closing Paren.");
+        }
+        return new Ast.Expr.Function(Optional.empty(), name, arguments);
+    }
+
+    private Ast.Expr endGroup(Ast.Expr expr) throws ParseException
+    {
+        if(!match(")"))
+        {
+            throw missing("Expected closing parenthesis.");
+        }
+        return group(expr);
+    }
+
+    /**
+     * Parses a literal value from the {@code primary-expression} rule, or
+     * returns null if the next token isn't one.
+     */
+    private Ast.Expr parseLiteral()
+    {
+        if(match("TRUE"))
+        {
+            return literal(true);
+        }
+        else if(match("FALSE"))
+        {
+            return literal(false);
+        }
+        else if(match("NIL"))
+        {
+            return literal(null);
+        }
+        else if(match(Token.Type.INTEGER))
+        {
+            return literal(new BigInteger(tokens.literal(-1)));
+        }
+        else if(match(Token.Type.DECIMAL))
+        {
+            return literal(new BigDecimal(tokens.literal(-1)));
+        }
+        else if(match(Token.Type.CHARACTER))
+        {
+            return literal(tokens.characterValue(-1));
+        }
+        else if(match(Token.Type.STRING))
+        {
+            return literal(tokens.stringValue(-1));
+        }
+        return null;
+    }
+
+    /**
+     * Returns the exception for a token which can't start a {@code
+     * primary-expression}.
+     */
+    private ParseException invalidPrimary()
+    {
+        if(!tokens.has(0))
+        {
+            return error("Invalid primary expression.");
+        }
+        if(tokens.literal(0).length() == 1) //invalid expression
+        {
+            return new ParseException("Invalid Expression", 0);
+        }
+        return new ParseException("Invalid primary expression.", (tokens.index(0) + tokens.literal(0).length()));
+    }
+
+    private Ast.Expr literal(Object literal)
+    {
+        return expressions == null ? new Ast.Expr.Literal(literal) : expressions.literal(literal);
+    }
+
+    private Ast.Expr group(Ast.Expr expr)
+    {
+        return expressions == null ? new Ast.Expr.Group(expr) : expressions.group(expr);
+    }
+
+    private Ast.Expr binary(String operator, Ast.Expr left, Ast.Expr right)
+    {
+        return expressions == null ? new Ast.Expr.Binary(operator, left, right) : expressions.binary(operator, left, right);
+    }
+
+    private Ast.Expr access(Optional<Ast.Expr> receiver, String name)
+    {
+        return expressions == null ? new Ast.Expr.Access(receiver, name) : expressions.access(receiver, name);
+    }
+
+    /**
+     * Tells the {@link ExpressionFactory}, if any, that the name is declared
+     * from here on, so accesses of it aren't shared with ones before.
+     */
+    private void declare(String name)
+    {
+        if (expressions != null)
+        {
+            expressions.declare(name);
+        }
+    }
+
+    /**
+     * Tells the {@link ExpressionFactory}, if any, that a scope starts here,
+     * where the {@link Analyzer} starts one.
+     */
+    private void enterScope()
+    {
+        if (expressions != null)
+        {
+            expressions.enterScope();
+        }
+    }
+
+    private void exitScope()
+    {
+        if (expressions != null)
+        {
+            expressions.exitScope();
+        }
+    }
+
+    /**
+     * Parses the rule of the given frame and everything nested in it with an
+     * explicit stack of frames instead of recursion. Each frame makes the
+     * steps of one of the recursive parse methods in the same order, and
+     * every step which matches tokens, throws an error or builds a node is a
+     * helper both call (such as {@link #endIf}), so this builds the same AST
+     * and throws the same errors at the same indices.
+     */
+    private Ast parse(Frame frame) throws ParseException
+    {
+        ArrayDeque<Frame> stack = new ArrayDeque<>();
+        Ast value = null;
+        while (true)
+        {
+            Frame child = frame.resume(value);
+            if (child != null)
             {
-                if(patterns[i] != tokens.get(i).getType())
-                {
-                    return false;
-                }
+                stack.push(frame);
+                frame = child;
+                value = null;
             }
-            else if(patterns[i] instanceof String)
+            else if (stack.isEmpty())
             {
-                if(!patterns[i].equals(tokens.get(i).getLiteral()))
-                {
-                    return false;
-                }
+                return frame.result;
             }
             else
             {
-                throw new AssertionError("Invalid pattern object: " + patterns[i].getClass());
+                value = frame.result;
+                frame = stack.pop();
             }
         }
-        return true;
     }
 
     /**
-     * As in the lexer, returns {@code true} if {@link #peek(Object...)} is true
-     * and advances the token stream.
+     * Returns an exception for an error at the next token, or just after the
+     * last token if there are no more.
+     */
+    private ParseException error(String message)
+    {
+        if (tokens.has(0))
+        {
+            return new ParseException(message, tokens.index(0));
+        }
+        return missing(message);
+    }
+
+    /**
+     * Returns an exception for something missing just after the previous
+     * token.
      */
-    private boolean match(Object... patterns) {
-        boolean peek = peek(patterns);
+    private ParseException missing(String message)
+    {
+        return new ParseException(message, tokens.index(-1) + tokens.literal(-1).length());
+    }
+
+    /**
+     * Returns an exception for an error at the token at the given offset,
+     * or just after the last token if there is no such token.
+     */
+    private ParseException errorAt(int offset, String message)
+    {
+        if (tokens.has(offset))
+        {
+            return new ParseException(message, tokens.index(offset));
+        }
+        return end(message);
+    }
+
+    /**
+     * Returns an exception for an error just after the token at the given
+     * offset, or just after the last token if there is no such token.
+     */
+    private ParseException errorAfter(int offset, String message)
+    {
+        if (tokens.has(offset))
+        {
+            return new ParseException(message, tokens.index(offset) + tokens.literal(offset).length());
+        }
+        return end(message);
+    }
+
+    private ParseException end(String message)
+    {
+        int last = tokens.tokens.size() - 1;
+        return new ParseException(message, tokens.tokens.index(last) + tokens.tokens.literal(last).length());
+    }
+
+    /**
+     * Returns true if the next token has the given literal. Unlike the
+     * lexer's {@link Lexer#peek(String...)}, each overload takes a fixed number of patterns,
+     * so a peek doesn't allocate an array or dispatch on the type of each
+     * pattern. Operators and reserved words are compared by their shared
+     * {@link Interner} word.
+     */
+    private boolean peek(String literal) {
+        return tokens.has(0) && tokens.literalEquals(0, literal);
+    }
+
+    /**
+     * Returns true if the next token has the given type.
+     */
+    private boolean peek(Token.Type type) {
+        return tokens.has(0) && tokens.type(0) == type;
+    }
+
+    /**
+     * Returns true if the next token has the given literal and the one after
+     * it has the given type.
+     */
+    private boolean peek(String literal, Token.Type type) {
+        return tokens.has(1) && tokens.literalEquals(0, literal) && tokens.type(1) == type;
+    }
+
+    private boolean match(String literal) {
+        boolean peek = peek(literal);
         if(peek)
         {
-            for(int i = 0; i < patterns.length; i++)
-            {
-                tokens.advance();
-            }
+            tokens.advance();
+        }
+        return peek;
+    }
+
+    private boolean match(Token.Type type) {
+        boolean peek = peek(type);
+        if(peek)
+        {
+            tokens.advance();
         }
         return peek;
     }
 
+    private boolean match(String literal, Token.Type type) {
+        boolean peek = peek(literal, type);
+        if(peek)
+        {
+            tokens.advance();
+            tokens.advance();
+        }
+        return peek;
+    }
+
+    /**
+     * Receives the token positions of the methods and method body statements
+     * as they are parsed. The statements of a method are reported before the
+     * method itself.
+     */
+    interface Listener {
+
+        void method(int start, int end);
+
+        void statement(int start, int end);
+
+    }
+
+    /**
+     * A rule being parsed by {@link #parse(Frame)}. Instead of calling the
+     * parse method of a nested rule, {@link #resume(Ast)} returns a frame for
+     * it, and is resumed with the AST it parsed.
+     */
+    private abstract class Frame {
+
+        int state = 0;
+        Ast result;
+
+        /**
+         * Continues parsing with the AST of the nested rule last returned, or
+         * null the first time. Returns a frame for the next nested rule, or
+         * null once {@link #result} is set.
+         */
+        abstract Frame resume(Ast value) throws ParseException;
+
+        Frame done(Ast result) {
+            this.result = result;
+            return null;
+        }
+
+    }
+
+    /**
+     * Makes the steps of {@link #parseStatement()} and the statement rules.
+     */
+    private final class StatementFrame extends Frame {
+
+        private static final int START = 0, DECLARATION = 1, IF = 2, IF_THEN = 3, IF_ELSE = 4, FOR = 5, FOR_BODY = 6,
+                WHILE = 7, WHILE_BODY = 8, RETURN = 9, RECEIVER = 10, ASSIGNMENT = 11;
+
+        private String name;
+        private Optional<String> typeName;
+        private Ast.Expr expr;
+        private List<Ast.Stmt> statements;
+        private List<Ast.Stmt> elseStatements;
+
+        @Override
+        Frame resume(Ast value) throws ParseException {
+            switch (state) {
+                case START:
+                    return start();
+                case DECLARATION:
+                    return done(endDeclaration(name, typeName, Optional.of((Ast.Expr) value)));
+                case IF:
+                    expr = (Ast.Expr) value;
+                    startBlock();
+                    statements = new ArrayList<>();
+                    elseStatements = new ArrayList<>();
+                    state = IF_THEN;
+                    return thenStatement();
+                case IF_THEN:
+                    statements.add((Ast.Stmt) value);
+                    return thenStatement();
+                case IF_ELSE:
+                    elseStatements.add((Ast.Stmt) value);
+                    return elseStatement();
+                case FOR:
+                    expr = (Ast.Expr) value;
+                    startBlock();
+                    declare(name);
+                    statements = new ArrayList<>();
+                    state = FOR_BODY;
+                    return forStatement();
+                case FOR_BODY:
+                    statements.add((Ast.Stmt) value);
+                    return forStatement();
+                case WHILE:
+                    expr = (Ast.Expr) value;
+                    startBlock();
+                    statements = new ArrayList<>();
+                    state = WHILE_BODY;
+                    return whileStatement();
+                case WHILE_BODY:
+                    statements.add((Ast.Stmt) value);
+                    return whileStatement();
+                case RETURN:
+                    return done(endReturn((Ast.Expr) value));
+                case RECEIVER:
+                    expr = (Ast.Expr) value;
+                    if (match("=")) {
+                        state = ASSIGNMENT;
+                        return new BinaryFrame(LOGICAL);
+                    }
+                    return done(endExpressionStatement(expr));
+                case ASSIGNMENT:
+                    return done(endAssignment(expr, (Ast.Expr) value));
+                default:
+                    throw new AssertionError(state);
+            }
+        }
+
+        private Frame start() throws ParseException {
+            if (peek("LET")) {
+                name = declarationName();
+                typeName = declarationType();
+                if (match("=")) {
+                    state = DECLARATION;
+                    return new BinaryFrame(LOGICAL);
+                }
+                return done(endDeclaration(name, typeName, Optional.empty()));
+            } else if (match("IF")) {
+                state = IF;
+            } else if (match("FOR")) {
+                name = forName();
+                state = FOR;
+            } else if (match("WHILE")) {
+                state = WHILE;
+            } else if (match("RETURN")) {
+                state = RETURN;
+            } else {
+                state = RECEIVER;
+            }
+            return new BinaryFrame(LOGICAL);
+        }
+
+        private Frame thenStatement() throws ParseException {
+            if (hasThenStatement()) {
+                return new StatementFrame();
+            }
+            startElse();
+            state = IF_ELSE;
+            return elseStatement();
+        }
+
+        private Frame elseStatement() throws ParseException {
+            if (match("ELSE")) {
+                return new StatementFrame();
+            }
+            return done(endIf(expr, statements, elseStatements));
+        }
+
+        private Frame forStatement() throws ParseException {
+            if (hasForStatement()) {
+                return new StatementFrame();
+            }
+            return done(endFor(name, expr, statements));
+        }
+
+        private Frame whileStatement() throws ParseException {
+            if (hasWhileStatement()) {
+                return new StatementFrame();
+            }
+            return done(endWhile(expr, statements));
+        }
+
+    }
+
+    /**
+     * Makes the steps of {@link #parseBinaryExpression(int)}, so a frame for
+     * the lowest level parses the {@code expression} rule.
+     */
+    private final class BinaryFrame extends Frame {
+
+        private final int level;
+        private Ast.Expr expr;
+        private String operator;
+
+        private BinaryFrame(int level) {
+            this.level = level;
+        }
+
+        @Override
+        Frame resume(Ast value) throws ParseException {
+            if (state == 0) {
+                state = 1;
+                return new SecondaryFrame();
+            }
+            expr = expr == null ? (Ast.Expr) value : binary(operator, expr, (Ast.Expr) value);
+            int precedence = matchOperator(level);
+            if (precedence != 0) {
+                operator = tokens.literal(-1);
+                return new BinaryFrame(precedence + 1);
+            }
+            return done(expr);
+        }
+
+    }
+
+    /**
+     * Makes the steps of {@link #parseSecondaryExpression()}.
+     */
+    private final class SecondaryFrame extends Frame {
+
+        private Ast.Expr expr;
+        private String name;
+        private List<Ast.Expr> arguments;
+
+        @Override
+        Frame resume(Ast value) throws ParseException {
+            if (state == 0) {
+                state = 1;
+                return new PrimaryFrame();
+            } else if (state == 1) {
+                expr = (Ast.Expr) value;
+            } else {
+                arguments.add((Ast.Expr) value);
+                if (match(",")) {
+                    return new BinaryFrame(LOGICAL);
+                }
+                return done(endMethodCall(expr, name, arguments));
+            }
+            while ((name = matchMember()) != null) {
+                if (match("(")) {
+                    if (match(")")) {
+                        expr = new Ast.Expr.Function(Optional.of(expr), name, Arrays.asList());
+                        continue;
+                    }
+                    arguments = new ArrayList<>();
+                    state = 2;
+                    return new BinaryFrame(LOGICAL);
+                }
+                expr = field(expr, name);
+            }
+            return done(expr);
+        }
+
+    }
+
+    /**
+     * Makes the steps of {@link #parsePrimaryExpression()}.
+     */
+    private final class PrimaryFrame extends Frame {
+
+        private String name;
+        private List<Ast.Expr> arguments;
+
+        @Override
+        Frame resume(Ast value) throws ParseException {
+            if (state == 1) {
+                arguments.add((Ast.Expr) value);
+                if (match(",")) {
+                    return new BinaryFrame(LOGICAL);
+                }
+                return done(endFunctionCall(name, arguments));
+            } else if (state == 2) {
+                return done(endGroup((Ast.Expr) value));
+            }
+            Ast.Expr literal = parseLiteral();
+            if (literal != null) {
+                return done(literal);
+            } else if (match(Token.Type.IDENTIFIER)) {
+                name = tokens.literal(-1);
+                if (match("(")) {
+                    if (match(")")) {
+                        return done(new Ast.Expr.Function(Optional.empty(), name, Arrays.asList()));
+                    }
+                    arguments = new ArrayList<>();
+                    state = 1;
+                    return new BinaryFrame(LOGICAL);
+                }
+                return done(access(Optional.empty(), name));
+            } else if (match("(")) {
+                state = 2;
+                return new BinaryFrame(LOGICAL);
+            }
+            throw invalidPrimary();
+        }
+
+    }
+
+    /**
+     * The statements of a method body parsed by {@link #parseSourceLazily()},
+     * which are parsed from the recorded token range on first use. The tokens
+     * (and with them the source) are dropped once that is done.
+     */
+    private static final class LazyStatements extends AbstractList<Ast.Stmt> {
+
+        private TokenBuffer tokens; // null once the statements are parsed
+        private final int start;
+        private final int end; // position of the closing END
+        private List<Ast.Stmt> statements;
+
+        private LazyStatements(TokenBuffer tokens, int start, int end) {
+            this.tokens = tokens;
+            this.start = start;
+            this.end = end;
+        }
+
+        private List<Ast.Stmt> statements() {
+            if (statements == null) {
+                Parser parser = new Parser(tokens);
+                parser.tokens.index = start;
+                List<Ast.Stmt> parsed = parser.parseStatements();
+                if (parser.tokens.index != end) {
+                    // the body stopped early or ran past its END, as an eager parse would find
+                    parser.match("END");
+                    throw parser.errorAfter(1, "Method Missing \"END\"");
+                }
+                statements = parsed;
+                tokens = null;
+            }
+            return statements;
+        }
+
+        @Override
+        public Ast.Stmt get(int index) {
+            return statements().get(index);
+        }
+
+        @Override
+        public int size() {
+            return statements().size();
+        }
+
+    }
+
     private static final class TokenStream {
 
-        private final List<Token> tokens;
+        private final TokenBuffer tokens;
         private int index = 0;
 
-        private TokenStream(List<Token> tokens) {
+        private TokenStream(TokenBuffer tokens) {
             this.tokens = tokens;
         }
 
@@ -890,10 +1708,71 @@ public final class Parser {
         }
 
         /**
-         * Gets the token at index + offset.
+         * Gets the token at index + offset. This creates a {@link Token}, so
+         * the parser uses {@link #literal(int)} and {@link #index(int)}
+         * instead.
          */
         public Token get(int offset) {
-            return tokens.get(index + offset);
+            return tokens.get(check(offset));
+        }
+
+        /**
+         * Gets the literal of the token at index + offset. Literals are
+         * shared, so this only allocates the first time a name is seen.
+         */
+        public String literal(int offset) {
+            return tokens.literal(check(offset));
+        }
+
+        /**
+         * Gets the decoded value of the string literal at index + offset.
+         */
+        public String stringValue(int offset) {
+            return tokens.stringValue(check(offset));
+        }
+
+        /**
+         * Gets the decoded value of the character literal at index + offset.
+         */
+        public char characterValue(int offset) {
+            return tokens.characterValue(check(offset));
+        }
+
+        /**
+         * Gets the index in the source of the token at index + offset.
+         */
+        public int index(int offset) {
+            return tokens.index(check(offset));
+        }
+
+        private int check(int offset) {
+            if (index + offset < 0 || index + offset >= tokens.size()) {
+                throw new IndexOutOfBoundsException("Index: " + (index + offset) + ", Size: " + tokens.size());
+            }
+            return index + offset;
+        }
+
+        /**
+         * Gets the type of the token at index + offset.
+         */
+        public Token.Type type(int offset) {
+            return tokens.type(index + offset);
+        }
+
+        /**
+         * Gets the {@link Interner} word number of the token at index +
+         * offset.
+         */
+        public int word(int offset) {
+            return tokens.word(index + offset);
+        }
+
+        /**
+         * Returns true if the literal of the token at index + offset is equal
+         * to the given string.
+         */
+        public boolean literalEquals(int offset, String literal) {
+            return tokens.literalEquals(index + offset, literal);
         }
 
         /**
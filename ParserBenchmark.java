@@ -0,0 +1,578 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A small benchmark for the parser, run with {@code main} in the same way as
+ * {@link LexerBenchmark}. Sizes (in KB) can be passed as arguments.
+ */
+public final class ParserBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = args.length == 0 ? new int[] {64, 1024, 8192} : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        for (int size : sizes) {
+            String input = LexerBenchmark.source(size * 1024);
+            System.out.println("== " + size + " KB ==");
+            footprint(input);
+            List<Token> list = new Lexer(input).lex();
+            TokenBuffer buffer = new Lexer(input).lexBuffer();
+            LexerBenchmark.report("lex + parse (List<Token>)", input.length(), () -> new Parser(new Lexer(input).lex()).parseSource());
+            LexerBenchmark.report("lex + parse (TokenBuffer)", input.length(), () -> new Parser(new Lexer(input).lexBuffer()).parseSource());
+            LexerBenchmark.report("parse (List<Token>)", input.length(), () -> new Parser(list).parseSource());
+            LexerBenchmark.report("parse (TokenBuffer)", input.length(), () -> new Parser(buffer).parseSource());
+            LexerBenchmark.report("parse (recovering)", input.length(), () -> new Parser(buffer).parseSourceRecovering());
+            cache(input);
+            astCache(input);
+            flat(input);
+            String expressions = expressions(size * 1024);
+            TokenBuffer expressionTokens = new Lexer(expressions).lexBuffer();
+            LexerBenchmark.report("parse (expressions)", expressions.length(), () -> new Parser(expressionTokens).parseSource());
+            LexerBenchmark.report("parse (expressions, shared)", expressions.length(), () -> new Parser(expressionTokens, new ExpressionFactory()).parseSource());
+            shared(expressionTokens);
+            String literals = literals(size * 1024);
+            TokenBuffer literalTokens = new Lexer(literals).lexBuffer();
+            LexerBenchmark.report("parse (literals)", literals.length(), () -> new Parser(literalTokens).parseSource());
+            String nested = nested(size * 1024);
+            TokenBuffer nestedTokens = new Lexer(nested).lexBuffer();
+            LexerBenchmark.report("parse (deeply nested)", nested.length(), () -> new Parser(nestedTokens).parseSource());
+            String methods = methods(size * 1024);
+            TokenBuffer methodTokens = new Lexer(methods).lexBuffer();
+            LexerBenchmark.report("parse (methods)", methods.length(), () -> new Parser(methodTokens).parseSource());
+            LexerBenchmark.report("parse (methods, lazy outline)", methods.length(), () -> new Parser(methodTokens).parseSourceLazily());
+            LexerBenchmark.report("parse (methods, parallel)", methods.length(), () -> ParallelParser.parse(methodTokens));
+            reparse(methods);
+        }
+    }
+
+    /**
+     * Generates a valid source of roughly the given size made of long binary
+     * expressions using every precedence level.
+     */
+    private static String expressions(int size) {
+        StringBuilder builder = new StringBuilder("DEF main(): Integer DO\n");
+        for (int i = 0; builder.length() < size; i++) {
+            builder.append("    x = a + b * (c - ").append(i).append(") / d AND e == f OR g < h + obj.field * 3 - 1.5;\n")
+                    .append("    y = 1 + 2 + 3 + 4 * 5 * 6 != 7 AND TRUE OR x >= \"s\" AND y <= 'c' OR NIL == z;\n");
+        }
+        return builder.append("END\n").toString();
+    }
+
+    /**
+     * Generates a valid source of roughly the given size made of string and
+     * character literals, most with escapes, like a string table.
+     */
+    private static String literals(int size) {
+        StringBuilder builder = new StringBuilder("DEF strings(): Integer DO\n");
+        for (int i = 0; builder.length() < size; i++) {
+            builder.append("    table.put(").append(i).append(", \"Entry ").append(i).append(":\\tname=\\\"value\\\" (ok)\\n\");\n")
+                    .append("    table.put(").append(i).append(", \"plain text without any escapes at all\", 'c', '\\n', '\\'');\n");
+        }
+        return builder.append("END\n").toString();
+    }
+
+    /**
+     * Generates a valid source of roughly the given size made of blocks and
+     * groups nested thousands deep, like generated code, which the parser
+     * handles with an explicit stack.
+     */
+    private static String nested(int size) {
+        StringBuilder builder = new StringBuilder("DEF main(): Integer DO\n");
+        while (builder.length() < size) {
+            for (int i = 0; i < 1000; i++) {
+                builder.append("IF x > ").append(i).append(" DO\n");
+            }
+            builder.append("x = ");
+            for (int i = 0; i < 1000; i++) {
+                builder.append("(x + f(");
+            }
+            builder.append("1");
+            for (int i = 0; i < 1000; i++) {
+                builder.append("))");
+            }
+            builder.append(";\n");
+            for (int i = 0; i < 1000; i++) {
+                builder.append("END\n");
+            }
+        }
+        return builder.append("END\n").toString();
+    }
+
+    /**
+     * Generates a valid source of roughly the given size made of many small
+     * methods, like a library.
+     */
+    private static String methods(int size) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < size; i++) {
+            builder.append("DEF method").append(i).append("(x: Integer, y: Decimal): Integer DO\n")
+                    .append("    LET z: Integer = x * 2 + y.floor();\n")
+                    .append("    IF z > 10 AND x != 0 DO\n")
+                    .append("        WHILE z > 0 DO z = z - obj.step(x, 'c', \"text\"); END\n")
+                    .append("    ELSE\n")
+                    .append("        print(z);\n")
+                    .append("    END\n")
+                    .append("    RETURN z;\n")
+                    .append("END\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Times re-parsing after editing one statement in the middle of the
+     * source with an {@link IncrementalParser}, alternating between two
+     * versions of the statement. The rate is over the whole source, to compare
+     * with parsing it.
+     */
+    private static void reparse(String input) {
+        int offset = input.indexOf("z = z - obj.step", input.length() / 2);
+        String edit = "z = z - obj.step";
+        String replacement = "z = z + obj.skip";
+        String edited = input.substring(0, offset) + replacement + input.substring(offset + edit.length());
+        List<Token> tokens = new Lexer(input).lex();
+        IncrementalLexer.Delta forward = IncrementalLexer.relex(edited, tokens, offset, edit.length(), replacement.length());
+        List<Token> editedTokens = forward.apply(tokens);
+        IncrementalLexer.Delta back = IncrementalLexer.relex(input, editedTokens, offset, replacement.length(), edit.length());
+        IncrementalParser parser = new IncrementalParser();
+        parser.parse(tokens);
+        boolean[] isEdited = {false};
+        LexerBenchmark.report("reparse (one statement edited)", input.length(), () -> {
+            parser.reparse(isEdited[0] ? tokens : editedTokens, isEdited[0] ? back : forward);
+            isEdited[0] = !isEdited[0];
+        });
+    }
+
+    /**
+     * Times parsing from a {@link TokenCache} hit, which maps and decodes the
+     * cached tokens instead of lexing.
+     */
+    private static void cache(String input) throws IOException {
+        Path directory = Files.createTempDirectory("benchmark");
+        try {
+            TokenCache cache = new TokenCache(directory);
+            cache.lex(input);
+            LexerBenchmark.report("cache hit + parse", input.length(), () -> {
+                try {
+                    new Parser(cache.lex(input)).parseSource();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            System.out.printf("%-32s %10.2f%% %10d bytes saved%n", "cache hit rate", cache.getHitRate() * 100, cache.getBytesSaved());
+            cache.clear();
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Times loading the AST from an {@link AstCache} hit, including hashing
+     * the source and reading the entry, and prints how many times faster it
+     * is than lexing and parsing. For the speedup the hit and the lex and
+     * parse run alternately and are compared by their fastest run, since on
+     * a loaded machine the average of a few runs is mostly collecting the
+     * garbage of the ones before.
+     */
+    private static void astCache(String input) throws IOException {
+        Path directory = Files.createTempDirectory("benchmark");
+        try {
+            AstCache cache = new AstCache(directory);
+            Ast.Source expected = cache.parse(input);
+            if (!cache.parse(input).equals(expected)) {
+                throw new AssertionError("cached AST differs");
+            }
+            Runnable hit = () -> {
+                try {
+                    cache.parse(input);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            Runnable list = () -> new Parser(new Lexer(input).lex()).parseSource();
+            Runnable buffer = () -> new Parser(new Lexer(input).lexBuffer()).parseSource();
+            LexerBenchmark.report("cache hit (AST)", input.length(), hit);
+            long fastestHit = Long.MAX_VALUE, fastestList = Long.MAX_VALUE, fastestBuffer = Long.MAX_VALUE;
+            for (int i = 0; i < 20; i++) {
+                fastestList = Math.min(fastestList, time(list));
+                fastestBuffer = Math.min(fastestBuffer, time(buffer));
+                fastestHit = Math.min(fastestHit, time(hit));
+            }
+            System.out.printf("%-32s %10.1fx %10.3f ms%n", "AST cache vs lex + parse (List)", (double) fastestList / fastestHit, fastestHit / 1e6);
+            System.out.printf("%-32s %10.1fx %10.3f ms%n", "AST cache vs lex + parse (Buffer)", (double) fastestBuffer / fastestHit, fastestHit / 1e6);
+            System.out.printf("%-32s %10.2f%%%n", "AST cache hit rate", cache.getHitRate() * 100);
+            cache.clear();
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    private static long time(Runnable task) {
+        long start = System.nanoTime();
+        task.run();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Returns how many bytes of heap the object built by the supplier keeps
+     * alive: the used heap after a full collection while holding it, less
+     * the used heap after one before building it.
+     */
+    private static long retained(Supplier<Object> supplier) {
+        long before = usedHeap();
+        Object object = supplier.get();
+        long after = usedHeap();
+        Reference.reachabilityFence(object);
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Prints the bytes per node of the AST of the input as objects and as a
+     * {@link FlatAst}, and times counting its binary expressions with a
+     * visitor, with a recursive walk of the flat tree and with a scan of its
+     * nodes, and with the visitor through {@link FlatAst#accept}, which
+     * rebuilds the object AST first as the analyzer, interpreter and
+     * generator must. Both sizes are measured the same way, by {@link
+     * #retained}, and include the literal values. The names are held by the
+     * interner of the tokens either way, so neither counts them.
+     */
+    private static void flat(String input) {
+        TokenBuffer buffer = new Lexer(input).lexBuffer();
+        Ast.Source source = new Parser(buffer).parseSource();
+        FlatAst flat = FlatAst.of(source);
+        int count = flat.size();
+        long objectBytes = retained(() -> new Parser(buffer).parseSource());
+        long flatBytes = retained(() -> FlatAst.of(new Parser(buffer).parseSource()));
+        System.out.printf("%-32s %10.2f bytes/node%n", "retained (Ast)", (double) objectBytes / count);
+        System.out.printf("%-32s %10.2f bytes/node%n", "retained (FlatAst)", (double) flatBytes / count);
+        int expected = new BinaryCounter().visit(source);
+        LexerBenchmark.report("traverse (Ast.Visitor)", input.length(), () -> check(expected, new BinaryCounter().visit(source)));
+        LexerBenchmark.report("traverse (FlatAst, recursive)", input.length(), () -> check(expected, binaries(flat, flat.root())));
+        LexerBenchmark.report("traverse (FlatAst, scan)", input.length(), () -> {
+            int binaries = 0;
+            for (int node = 0; node < flat.size(); node++) {
+                if (flat.kind(node) == FlatAst.Kind.BINARY) {
+                    binaries++;
+                }
+            }
+            check(expected, binaries);
+        });
+        LexerBenchmark.report("traverse (FlatAst.accept)", input.length(), () -> check(expected, flat.accept(new BinaryCounter(), flat.root())));
+        System.out.println("  (FlatAst.accept, and so the analyzer, interpreter and generator, run on a rebuilt Ast)");
+    }
+
+    /**
+     * Prints the number of expression nodes in the AST of the tokens, and
+     * how many distinct ones are left when they are shared with an {@link
+     * ExpressionFactory}.
+     */
+    private static void shared(TokenBuffer tokens) {
+        ExpressionCounter counter = new ExpressionCounter();
+        counter.visit(new Parser(tokens, new ExpressionFactory()).parseSource());
+        System.out.printf("%-32s %10d nodes %10d distinct%n", "shared expressions", counter.total, counter.distinct.size());
+    }
+
+    private static void check(int expected, int actual) {
+        if (expected != actual) {
+            throw new AssertionError(expected + " != " + actual);
+        }
+    }
+
+    /**
+     * Returns the number of binary expressions under a node of a {@link
+     * FlatAst}, going through its children the way a visitor would.
+     */
+    private static int binaries(FlatAst flat, int node) {
+        if (node < 0) {
+            return 0;
+        }
+        switch (flat.kind(node)) {
+            case SOURCE:
+                return list(flat, flat.first(node)) + list(flat, flat.second(node));
+            case FIELD:
+            case DECLARATION:
+                return binaries(flat, flat.third(node));
+            case METHOD:
+                return list(flat, flat.third(node));
+            case FOR:
+                return binaries(flat, flat.second(node)) + list(flat, flat.third(node));
+            case EXPRESSION:
+            case RETURN:
+            case GROUP:
+                return binaries(flat, flat.first(node));
+            case ASSIGNMENT:
+                return binaries(flat, flat.first(node)) + binaries(flat, flat.second(node));
+            case IF:
+                return binaries(flat, flat.first(node)) + list(flat, flat.second(node)) + list(flat, flat.third(node));
+            case WHILE:
+                return binaries(flat, flat.first(node)) + list(flat, flat.second(node));
+            case BINARY:
+                return 1 + binaries(flat, flat.second(node)) + binaries(flat, flat.third(node));
+            case ACCESS:
+                return binaries(flat, flat.second(node));
+            case FUNCTION:
+                return binaries(flat, flat.second(node)) + list(flat, flat.third(node));
+            default:
+                return 0;
+        }
+    }
+
+    private static int list(FlatAst flat, int list) {
+        int binaries = 0;
+        for (int i = 0; i < flat.size(list); i++) {
+            binaries += binaries(flat, flat.item(list, i));
+        }
+        return binaries;
+    }
+
+    /**
+     * Counts the expressions of an {@link Ast}, and the distinct nodes among
+     * them.
+     */
+    private static final class ExpressionCounter implements Ast.Visitor<Void> {
+
+        private final Set<Ast.Expr> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        private int total = 0;
+
+        private Void statements(List<Ast.Stmt> statements) {
+            statements.forEach(this::visit);
+            return null;
+        }
+
+        private Void expression(Ast.Expr expr) {
+            total++;
+            distinct.add(expr);
+            return visit(expr);
+        }
+
+        private Void optional(Optional<Ast.Expr> expr) {
+            expr.ifPresent(this::expression);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            ast.getFields().forEach(this::visit);
+            ast.getMethods().forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Field ast) {
+            return optional(ast.getValue());
+        }
+
+        @Override
+        public Void visit(Ast.Method ast) {
+            return statements(ast.getStatements());
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Expression ast) {
+            return expression(ast.getExpression());
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Declaration ast) {
+            return optional(ast.getValue());
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Assignment ast) {
+            expression(ast.getReceiver());
+            return expression(ast.getValue());
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.If ast) {
+            expression(ast.getCondition());
+            statements(ast.getThenStatements());
+            return statements(ast.getElseStatements());
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.For ast) {
+            expression(ast.getValue());
+            return statements(ast.getStatements());
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.While ast) {
+            expression(ast.getCondition());
+            return statements(ast.getStatements());
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Return ast) {
+            return expression(ast.getValue());
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Literal ast) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Group ast) {
+            return expression(ast.getExpression());
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Binary ast) {
+            expression(ast.getLeft());
+            return expression(ast.getRight());
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Access ast) {
+            return optional(ast.getReceiver());
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Function ast) {
+            optional(ast.getReceiver());
+            ast.getArguments().forEach(this::expression);
+            return null;
+        }
+
+    }
+
+    /**
+     * Counts the binary expressions of an {@link Ast}.
+     */
+    private static final class BinaryCounter implements Ast.Visitor<Integer> {
+
+        private int statements(List<Ast.Stmt> statements) {
+            int binaries = 0;
+            for (Ast.Stmt statement : statements) {
+                binaries += visit(statement);
+            }
+            return binaries;
+        }
+
+        private int optional(Optional<Ast.Expr> expr) {
+            return expr.isPresent() ? visit(expr.get()) : 0;
+        }
+
+        @Override
+        public Integer visit(Ast.Source ast) {
+            int binaries = 0;
+            for (Ast.Field field : ast.getFields()) {
+                binaries += visit(field);
+            }
+            for (Ast.Method method : ast.getMethods()) {
+                binaries += visit(method);
+            }
+            return binaries;
+        }
+
+        @Override
+        public Integer visit(Ast.Field ast) {
+            return optional(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Method ast) {
+            return statements(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Expression ast) {
+            return visit(ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Declaration ast) {
+            return optional(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Assignment ast) {
+            return visit(ast.getReceiver()) + visit(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.If ast) {
+            return visit(ast.getCondition()) + statements(ast.getThenStatements()) + statements(ast.getElseStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.For ast) {
+            return visit(ast.getValue()) + statements(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.While ast) {
+            return visit(ast.getCondition()) + statements(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Return ast) {
+            return visit(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Literal ast) {
+            return 0;
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Group ast) {
+            return visit(ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Binary ast) {
+            return 1 + visit(ast.getLeft()) + visit(ast.getRight());
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Access ast) {
+            return optional(ast.getReceiver());
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Function ast) {
+            int binaries = optional(ast.getReceiver());
+            for (Ast.Expr argument : ast.getArguments()) {
+                binaries += visit(argument);
+            }
+            return binaries;
+        }
+
+    }
+
+    /**
+     * Prints the bytes per token allocated to hold the tokens of the input,
+     * first as a list and then as a {@link TokenBuffer}.
+     */
+    private static void footprint(String input) {
+        TokenBuffer buffer = new Lexer(input).lexBuffer();
+        int count = buffer.size();
+        long listBytes = LexerBenchmark.allocated(() -> new Lexer(input).lex());
+        long bufferBytes = LexerBenchmark.allocated(() -> new Lexer(input).lexBuffer());
+        System.out.printf("%-32s %10.2f bytes/token%n", "allocated (List<Token>)", (double) listBytes / count);
+        System.out.printf("%-32s %10.2f bytes/token%n", "allocated (TokenBuffer)", (double) bufferBytes / count);
+        System.out.printf("%-32s %10.2f bytes/token%n", "retained (TokenBuffer)", (double) buffer.bytes() / count);
+    }
+
+}
@@ -1,12 +1,15 @@
 package plc.project;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import javax.naming.directory.InvalidAttributeIdentifierException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Arrays;
@@ -117,6 +120,14 @@ final class ParserExpressionTests {
                 Arguments.of("Escape Character",
                         Arrays.asList(new Token(Token.Type.STRING, "\"Hello,\\nWorld!\"", 0)),
                         new Ast.Expr.Literal("Hello,\nWorld!")
+                ),
+                Arguments.of("Escaped Backslash Before n",
+                        Arrays.asList(new Token(Token.Type.STRING, "\"a\\\\nb\"", 0)),
+                        new Ast.Expr.Literal("a\\nb")
+                ),
+                Arguments.of("Escaped Backslash Character",
+                        Arrays.asList(new Token(Token.Type.CHARACTER, "'\\\\'", 0)),
+                        new Ast.Expr.Literal('\\')
                 )
         );
     }
@@ -367,6 +378,49 @@ final class ParserExpressionTests {
         );
     }
 
+    /**
+     * Checks that parsing allocates nothing but the AST: parsing a long
+     * expression must allocate no more than building the same tree directly,
+     * plus the parser itself. Names repeat so their literals are shared after
+     * the first parse.
+     */
+    @Test
+    void testParseAllocatesOnlyAst() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        int count = 10_000;
+        String[] names = new String[100];
+        StringBuilder source = new StringBuilder("name0");
+        for (int i = 0; i < 100; i++) {
+            names[i] = "name" + i;
+        }
+        for (int i = 1; i < count; i++) {
+            source.append(" AND ").append(names[i % 100]);
+        }
+        TokenBuffer tokens = new Lexer(source).lexBuffer();
+        Object[] result = new Object[1];
+        Runnable parse = () -> result[0] = new Parser(tokens).parseExpression();
+        Runnable build = () -> {
+            Ast.Expr expr = new Ast.Expr.Access(Optional.empty(), names[0]);
+            for (int i = 1; i < count; i++) {
+                expr = new Ast.Expr.Binary("AND", expr, new Ast.Expr.Access(Optional.empty(), names[i % 100]));
+            }
+            result[0] = expr;
+        };
+        for (int i = 0; i < 20; i++) {
+            parse.run();
+            build.run();
+        }
+        long id = Thread.currentThread().getId();
+        long start = threads.getThreadAllocatedBytes(id);
+        parse.run();
+        long parsed = threads.getThreadAllocatedBytes(id) - start;
+        start = threads.getThreadAllocatedBytes(id);
+        build.run();
+        long built = threads.getThreadAllocatedBytes(id) - start;
+        Assertions.assertTrue(parsed <= built + 1024, "parsing allocated " + parsed + " bytes, the AST is " + built);
+    }
 
     /**
      * Standard test function. If expected is null, a ParseException is expected
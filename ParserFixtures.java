@@ -0,0 +1,52 @@
+package plc.project;
+
+import java.util.function.IntFunction;
+
+/**
+ * Sources shared by the parser tests.
+ */
+final class ParserFixtures {
+
+    /**
+     * A source with every kind of field, method, statement and expression,
+     * and every kind of literal.
+     */
+    static final String EVERY_NODE = "LET count: Integer = 123456789012345678901234567890;\n"
+            + "LET rate: Decimal = 1.50;\n"
+            + "LET name: String;\n"
+            + "DEF main() DO\n"
+            + "    LET x = (1 + 2.5) * -3;\n"
+            + "    LET y: String;\n"
+            + "    FOR item IN list DO print(item.name, 'c', \"s\\n\", NIL, TRUE); END\n"
+            + "    IF x > 0 DO x = obj.f(x); ELSE RETURN FALSE; END\n"
+            + "END\n"
+            + "DEF add(a: Integer, b: Integer): Integer DO\n"
+            + "    WHILE a < b DO a = a + 1; obj.field = a; END\n"
+            + "    RETURN a;\n"
+            + "END\n";
+
+    private ParserFixtures() {}
+
+    /**
+     * Returns the given number of methods {@code method0}, {@code method1},
+     * and so on, each taking {@code x: Integer} and returning an {@code
+     * Integer}, with the body (a line per statement) given for its number.
+     */
+    static String methods(int count, IntFunction<String> body) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            source.append("DEF method").append(i).append("(x: Integer): Integer DO\n")
+                    .append(body.apply(i))
+                    .append("END\n");
+        }
+        return source.toString();
+    }
+
+    /**
+     * Parses the source with {@link Parser#parseSource()}.
+     */
+    static Ast.Source parse(String source) {
+        return new Parser(new Lexer(source).lex()).parseSource();
+    }
+
+}
@@ -0,0 +1,97 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Checks the errors {@link Parser} reports, and how it recovers from them.
+ */
+final class ParserRecoveryTests {
+
+    /**
+     * Checks the index of errors thrown by the strict parser, which stays
+     * where the course tests expect it.
+     */
+    @ParameterizedTest
+    @MethodSource
+    void testStrictErrorIndex(String test, String source, Function<Parser, Object> rule, int index) {
+        Parser parser = new Parser(new Lexer(source).lex());
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> rule.apply(parser));
+        Assertions.assertEquals(index, exception.getIndex());
+    }
+
+    private static Stream<Arguments> testStrictErrorIndex() {
+        Function<Parser, Object> source = Parser::parseSource;
+        Function<Parser, Object> lazily = parser -> parser.parseSourceLazily().getMethods().get(0).getStatements().size();
+        Function<Parser, Object> statement = Parser::parseStatement;
+        Function<Parser, Object> stack = parser -> {
+            parser.maxDepth = 0;
+            return parser.parseStatement();
+        };
+        return Stream.of(
+                Arguments.of("Invalid Method", "LET x;", (Function<Parser, Object>) Parser::parseMethod, 4),
+                Arguments.of("Method Tokens After END", "DEF f() DO RETURN 1; END x y", source, 28),
+                Arguments.of("Method Tokens After END (Lazy)", "DEF f() DO RETURN 1; END x y", lazily, 28),
+                Arguments.of("Method Missing END", "DEF f() DO x; y END", source, 19),
+                Arguments.of("Method Missing END (Lazy)", "DEF f() DO x; y END", lazily, 19),
+                Arguments.of("Method Missing END At EOF", "DEF f() DO RETURN 1;", source, 20),
+                Arguments.of("While Missing END", "WHILE x DO y; z w", statement, 17),
+                Arguments.of("While Missing END (Stack)", "WHILE x DO y; z w", stack, 17),
+                Arguments.of("Field Missing Name", "LET 1;", source, 4),
+                Arguments.of("Field Missing Type", "LET x 1;", source, 7),
+                Arguments.of("Field Missing Value", "LET x: Integer 1;", source, 16)
+        );
+    }
+
+    /**
+     * Checks that {@link Parser#parseSourceRecovering()} reports an error in
+     * a field, a method header, a statement and a statement in a block in one
+     * pass, and keeps the valid methods and statements.
+     */
+    @Test
+    void testParseSourceRecovering() {
+        String source = "LET a: Integer = 1 2;\n"
+                + "DEF f(): Integer DO\n"
+                + "    LET x: Integer = 1;\n"
+                + "    x = 1 2;\n"
+                + "    RETURN x;\n"
+                + "END\n"
+                + "DEF g(: Integer DO\n"
+                + "    RETURN 1;\n"
+                + "END\n"
+                + "DEF h(): Integer DO\n"
+                + "    WHILE x DO y = obj.; END\n"
+                + "    RETURN 2;\n"
+                + "END\n";
+        List<Token> tokens = new Lexer(source).lex();
+        Parser parser = new Parser(tokens);
+        Ast.Source ast = parser.parseSourceRecovering();
+        int[] indices = parser.getErrors().stream().mapToInt(ParseException::getIndex).toArray();
+        Assertions.assertArrayEquals(new int[] {
+                source.indexOf(" 2;"),
+                source.indexOf(" 2;", source.indexOf("x = 1")),
+                source.indexOf("(: Integer"),
+                source.indexOf(".;"),
+        }, indices);
+        ParseException first = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseSource());
+        Assertions.assertEquals(first.getIndex(), indices[0]);
+        Assertions.assertEquals(0, ast.getFields().size());
+        Assertions.assertEquals(2, ast.getMethods().size());
+        Assertions.assertEquals(2, ast.getMethods().get(0).getStatements().size());
+        Assertions.assertEquals(Arrays.asList(new Ast.Stmt.Return(new Ast.Expr.Literal(BigInteger.valueOf(2)))), ast.getMethods().get(1).getStatements());
+
+        Parser valid = new Parser(new Lexer(LexerBenchmark.source(4096)).lex());
+        Assertions.assertEquals(new Parser(new Lexer(LexerBenchmark.source(4096)).lex()).parseSource(), valid.parseSourceRecovering());
+        Assertions.assertEquals(0, valid.getErrors().size());
+    }
+
+}
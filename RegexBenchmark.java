@@ -0,0 +1,70 @@
+package plc.homework;
+
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+
+/**
+ * A stress test for the {@link Regex} patterns, run with {@code main}. For
+ * each pattern it generates adversarial inputs of doubling length and prints
+ * how long {@link Pattern} takes to match them (and how many characters it
+ * reads, through {@link GuardedMatcher}) next to {@link CompiledRegex}. A
+ * pattern stops growing once a match runs out of budget, which is where
+ * {@link Pattern} has gone exponential.
+ *
+ * Arguments are the maximum input length and the budget per match in
+ * milliseconds, by default 65536 and 1000.
+ */
+public final class RegexBenchmark {
+
+    private static final long MAX_STEPS = 1_000_000_000L;
+
+    public static void main(String[] args) {
+        int maxLength = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 16;
+        long maxNanos = (args.length > 1 ? Long.parseLong(args[1]) : 1000) * 1_000_000L;
+        // inputs which don't match, so the matcher tries every way of splitting them
+        run("EMAIL", Regex.EMAIL, CompiledRegex.EMAIL, n -> repeat("a", n / 2) + "@" + repeat("a", n / 2), maxLength, maxNanos);
+        run("EVEN_STRINGS", Regex.EVEN_STRINGS, CompiledRegex.EVEN_STRINGS, n -> repeat("x", n), maxLength, maxNanos);
+        run("INTEGER_LIST", Regex.INTEGER_LIST, CompiledRegex.INTEGER_LIST, n -> "[" + repeat("1, ", n / 3), maxLength, maxNanos);
+        run("NUMBER", Regex.NUMBER, CompiledRegex.NUMBER, n -> repeat("1", n) + "x", maxLength, maxNanos);
+        run("STRING", Regex.STRING, CompiledRegex.STRING, n -> "\"" + repeat("\\n", n / 2), maxLength, maxNanos);
+    }
+
+    private static void run(String name, Pattern pattern, CompiledRegex compiled, IntFunction<String> input, int maxLength, long maxNanos) {
+        System.out.println("== " + name + " " + pattern + " ==");
+        System.out.printf("%10s %14s %14s %14s%n", "length", "Pattern ms", "steps", "DFA ms");
+        for (int length = 2; length <= maxLength; length *= 2) {
+            String text = input.apply(length);
+            long start = System.nanoTime();
+            String steps;
+            boolean exceeded = false;
+            try {
+                GuardedMatcher.matches(pattern, text, MAX_STEPS, maxNanos);
+                steps = "";
+            } catch (GuardedMatcher.BudgetExceededException e) {
+                steps = "> " + e.getSteps();
+                exceeded = true;
+            }
+            double patternMillis = (System.nanoTime() - start) / 1e6;
+            start = System.nanoTime();
+            compiled.matches(text);
+            double compiledMillis = (System.nanoTime() - start) / 1e6;
+            if (steps.isEmpty()) {
+                steps = String.valueOf(GuardedMatcher.steps(pattern, text));
+            }
+            System.out.printf("%10d %14.3f %14s %14.3f%n", text.length(), patternMillis, steps, compiledMillis);
+            if (exceeded) {
+                System.out.println("stopped: out of budget");
+                break;
+            }
+        }
+    }
+
+    private static String repeat(String string, int count) {
+        StringBuilder builder = new StringBuilder(string.length() * Math.max(count, 0));
+        for (int i = 0; i < count; i++) {
+            builder.append(string);
+        }
+        return builder.toString();
+    }
+
+}
@@ -1,10 +1,15 @@
 package plc.homework;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
@@ -170,6 +175,71 @@ public class RegexTests {
         //throw new UnsupportedOperationException(); //TODO
     }
 
+    /**
+     * Differential test for {@link CompiledRegex}: each pattern must accept
+     * exactly the same inputs as {@link Pattern}. Inputs are random strings
+     * over the characters the patterns care about, half of them wrapped in
+     * quotes or brackets so that the string and list patterns match some.
+     * Inputs are kept short since {@link Regex#STRING} backtracks
+     * exponentially in {@link Pattern}.
+     */
+    @ParameterizedTest
+    @MethodSource
+    public void testCompiledRegex(String test, Pattern pattern) {
+        CompiledRegex compiled = CompiledRegex.of(pattern);
+        String characters = "aZ09._-@\\\"[], +\nbnrt'\t\u0085\u00e9";
+        Random random = new Random(0);
+        for (int i = 0; i < 100_000; i++) {
+            StringBuilder builder = new StringBuilder();
+            for (int length = random.nextInt(12); length > 0; length--) {
+                builder.append(characters.charAt(random.nextInt(characters.length())));
+            }
+            String input = i % 4 == 0 ? "\"" + builder + "\"" : i % 4 == 1 ? "[" + builder + "]" : builder.toString();
+            Assertions.assertEquals(pattern.matcher(input).matches(), compiled.matches(input), input);
+        }
+    }
+
+    public static Stream<Arguments> testCompiledRegex() {
+        return Stream.of(
+                Arguments.of("Email", Regex.EMAIL),
+                Arguments.of("Even Strings", Regex.EVEN_STRINGS),
+                Arguments.of("Integer List", Regex.INTEGER_LIST),
+                Arguments.of("Number", Regex.NUMBER),
+                Arguments.of("String", Regex.STRING)
+        );
+    }
+
+    @Test
+    public void testCompiledRegexMatchAll() {
+        List<String> inputs = Arrays.asList("1", "1.5", ".1", "-100", "1.", "+99.99", "x");
+        BitSet matches = CompiledRegex.NUMBER.matchAll(inputs);
+        for (int i = 0; i < inputs.size(); i++) {
+            Assertions.assertEquals(Regex.NUMBER.matcher(inputs.get(i)).matches(), matches.get(i), inputs.get(i));
+        }
+    }
+
+    @Test
+    public void testCompiledRegexLongString() {
+        StringBuilder input = new StringBuilder("\"");
+        for (int i = 0; i < 100_000; i++) {
+            input.append("\\n");
+        }
+        Assertions.assertTrue(CompiledRegex.STRING.matches(input + "\""));
+        Assertions.assertFalse(CompiledRegex.STRING.matches(input + "x"));
+    }
+
+    @Test
+    public void testGuardedMatch() {
+        Assertions.assertTrue(GuardedMatcher.matches(Regex.STRING, "\"1\\t2\"", 1_000, Long.MAX_VALUE));
+        Assertions.assertFalse(GuardedMatcher.matches(Regex.STRING, "\"invalid\\escape\"", 1_000, Long.MAX_VALUE));
+        StringBuilder input = new StringBuilder("\"");
+        for (int i = 0; i < 4096; i++) {
+            input.append("\\n");
+        }
+        Assertions.assertThrows(GuardedMatcher.BudgetExceededException.class,
+                () -> GuardedMatcher.matches(Regex.STRING, input, 100_000, Long.MAX_VALUE));
+    }
+
     /**
      * Asserts that the input matches the given pattern. This method doesn't do
      * much now, but you will see this concept in future assignments.
@@ -0,0 +1,207 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Checks that lexing from a {@link Reader} or a {@link ReadableByteChannel}
+ * produces exactly the same tokens and lines as lexing the whole string,
+ * however the input arrives.
+ */
+final class StreamingLexerTests {
+
+    private static final int WINDOW = 8192; // the initial window of the lexer
+
+    /**
+     * Checks a token placed so that each of its characters in turn, and the
+     * positions just before and after it, is the first one past the initial
+     * window, read in pieces of various sizes.
+     */
+    @ParameterizedTest
+    @MethodSource
+    void testWindowBoundary(String test, String token) {
+        for (int k = -1; k <= token.length(); k++) {
+            String input = filler(WINDOW - k) + token + " end;\nx;\n";
+            for (int read : new int[] {1, 7, WINDOW - 1, WINDOW, Integer.MAX_VALUE}) {
+                test(input, read);
+            }
+        }
+    }
+
+    private static Stream<Arguments> testWindowBoundary() {
+        return Stream.of(
+                Arguments.of("Identifier", "identifier"),
+                Arguments.of("Number", "-12.5"),
+                Arguments.of("Character", "'\\n'"),
+                Arguments.of("String", "\"a string with spaces\""),
+                Arguments.of("Operator", "<="),
+                Arguments.of("Whitespace", "  \t  "),
+                Arguments.of("CRLF", "x\r\ny"),
+                Arguments.of("CR", "x\r\ry")
+        );
+    }
+
+    /**
+     * Checks tokens longer than the window, which has to grow to hold them,
+     * and long sources which refill it many times.
+     */
+    @Test
+    void testLongInputs() {
+        StringBuilder string = new StringBuilder("\"");
+        for (int i = 0; i < 3 * WINDOW; i++) {
+            string.append((char) ('a' + i % 26));
+        }
+        String input = "x = " + string + "\";\ny = " + string + "\";\n";
+        StringBuilder identifier = new StringBuilder();
+        for (int i = 0; i < 2 * WINDOW + 1; i++) {
+            identifier.append('z');
+        }
+        String source = LexerBenchmark.source(10 * WINDOW);
+        for (int read : new int[] {1, 100, WINDOW, Integer.MAX_VALUE}) {
+            test(input, read);
+            test(identifier.toString(), read);
+            test(source, read);
+        }
+    }
+
+    /**
+     * Checks that an error past the first window is thrown at the same index
+     * as when lexing the string.
+     */
+    @Test
+    void testErrors() {
+        for (int k = -1; k <= 4; k++) {
+            String input = filler(WINDOW - k) + "\"abc\nx;\n";
+            ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Lexer(input).lex());
+            for (int read : new int[] {1, WINDOW, Integer.MAX_VALUE}) {
+                ParseException actual = Assertions.assertThrows(ParseException.class,
+                        () -> new Lexer(new PieceReader(input, read)).lex());
+                Assertions.assertEquals(expected.getIndex(), actual.getIndex());
+            }
+        }
+    }
+
+    /**
+     * Checks UTF-8 input read from a channel in pieces which split multi-byte
+     * characters (including surrogate pairs) at every byte.
+     */
+    @Test
+    void testChannel() {
+        String input = "LET s = \"héllo € 😀\";\nprint('é', \"世界\");\n"
+                + filler(WINDOW) + "\"éééééééé\";\n";
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        List<Token> expected = new Lexer(input).lex();
+        for (int read : new int[] {1, 2, 3, 5, 4096, Integer.MAX_VALUE}) {
+            Assertions.assertEquals(expected, new Lexer(new PieceChannel(bytes, read)).lex(), "read " + read);
+        }
+        for (int offset = 0; offset < 16; offset++) {
+            String shifted = filler(WINDOW - offset) + input;
+            Assertions.assertEquals(new Lexer(shifted).lex(),
+                    new Lexer(new PieceChannel(shifted.getBytes(StandardCharsets.UTF_8), 3)).lex());
+        }
+    }
+
+    private static void test(String input, int read) {
+        String message = "read " + read;
+        Lexer expected = new Lexer(input);
+        List<Token> tokens = expected.lex();
+        Lexer actual = new Lexer(new PieceReader(input, read));
+        Assertions.assertEquals(tokens, actual.lex(), message);
+        for (int offset = 0; offset <= input.length(); offset += Math.max(1, input.length() / 4096)) {
+            Assertions.assertEquals(expected.getLines().getLine(offset), actual.getLines().getLine(offset), message);
+        }
+        Assertions.assertEquals(expected.getLines().size(), actual.getLines().size(), message);
+        List<Token> iterated = new ArrayList<>();
+        Iterator<Token> iterator = new Lexer(new PieceReader(input, read)).iterator();
+        while (iterator.hasNext()) {
+            iterated.add(iterator.next());
+        }
+        Assertions.assertEquals(tokens, iterated, message);
+    }
+
+    /**
+     * Returns valid input of the given length, as short lines of identifiers
+     * padded with spaces at the end.
+     */
+    private static String filler(int length) {
+        StringBuilder filler = new StringBuilder(length);
+        while (filler.length() + 16 <= length) {
+            filler.append("name = value;\n");
+        }
+        while (filler.length() < length) {
+            filler.append(' ');
+        }
+        return filler.toString();
+    }
+
+    /**
+     * A reader which returns at most the given number of characters per read.
+     */
+    private static final class PieceReader extends FilterReader {
+
+        private final int piece;
+
+        private PieceReader(String input, int piece) {
+            super(new StringReader(input));
+            this.piece = piece;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(length, piece));
+        }
+
+    }
+
+    /**
+     * A channel which returns at most the given number of bytes per read.
+     */
+    private static final class PieceChannel implements ReadableByteChannel {
+
+        private final ByteBuffer bytes;
+        private final int piece;
+
+        private PieceChannel(byte[] bytes, int piece) {
+            this.bytes = ByteBuffer.wrap(bytes);
+            this.piece = piece;
+        }
+
+        @Override
+        public int read(ByteBuffer destination) {
+            if (!bytes.hasRemaining()) {
+                return -1;
+            }
+            int length = Math.min(Math.min(piece, bytes.remaining()), destination.remaining());
+            ByteBuffer slice = bytes.slice();
+            slice.limit(length);
+            destination.put(slice);
+            bytes.position(bytes.position() + length);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+
+    }
+
+}
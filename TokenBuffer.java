@@ -0,0 +1,193 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact list of tokens, stored as parallel arrays of types, start offsets
+ * and lengths into the source instead of a {@link List} of {@link Token}s.
+ * Literals are only copied out of the source when {@link #literal(int)} or
+ * {@link #get(int)} is called; {@link #literalEquals(int, String)} compares
+ * in place, which is what the parser uses for keywords and operators.
+ * Operators and reserved words are classified when they are added, so they
+ * are compared by identity and their literals are never copied (see {@link
+ * Interner}).
+ *
+ * Buffers are created by {@link Lexer#lexBuffer()}, or from an existing list
+ * with {@link #of(List)}.
+ */
+public final class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private final CharSequence source;
+    private byte[] types = new byte[16];
+    private byte[] words = new byte[16]; // Interner word numbers, 0 for others
+    private int[] starts = new int[16]; // start of the literal in source
+    private int[] lengths = new int[16];
+    private int[] indices; // token indices, null if they are the starts
+    private int size = 0;
+    private final Interner interner = new Interner();
+
+    public TokenBuffer(CharSequence source) {
+        this.source = source;
+    }
+
+    /**
+     * Returns a buffer containing the given tokens. Their literals are copied
+     * into a single shared source.
+     */
+    public static TokenBuffer of(List<Token> tokens) {
+        StringBuilder source = new StringBuilder();
+        TokenBuffer buffer = indexed(source);
+        for (Token token : tokens) {
+            int start = source.length();
+            source.append(token.getLiteral());
+            buffer.add(token.getType(), start, token.getLiteral().length(), token.getIndex());
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns an empty buffer whose source only holds the literals, so the
+     * index of each token has to be given to {@link #add(Token.Type, int, int,
+     * int)}. Used by {@link #of(List)} and {@link TokenCache}.
+     */
+    static TokenBuffer indexed(CharSequence source) {
+        TokenBuffer buffer = new TokenBuffer(source);
+        buffer.indices = new int[buffer.starts.length];
+        return buffer;
+    }
+
+    /**
+     * Appends a token whose literal is the given range of the source.
+     */
+    public void add(Token.Type type, int start, int length) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            words = Arrays.copyOf(words, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            if (indices != null) {
+                indices = Arrays.copyOf(indices, capacity);
+            }
+        }
+        types[size] = (byte) type.ordinal();
+        words[size] = (byte) Interner.word(source, start, start + length);
+        starts[size] = start;
+        lengths[size] = length;
+        size++;
+    }
+
+    /**
+     * Appends a token whose literal is the given range of the source of an
+     * {@link #indexed(CharSequence)} buffer.
+     */
+    void add(Token.Type type, int start, int length, int index) {
+        add(type, start, length);
+        indices[size - 1] = index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Token.Type type(int i) {
+        return TYPES[types[i]];
+    }
+
+    public int index(int i) {
+        return indices == null ? starts[i] : indices[i];
+    }
+
+    public int length(int i) {
+        return lengths[i];
+    }
+
+    /**
+     * Returns the {@link Interner} word number of the token, or 0 if it is
+     * not an operator or reserved word.
+     */
+    public int word(int i) {
+        return words[i] & 0xFF;
+    }
+
+    /**
+     * Returns the literal of the token. Repeated literals share one String.
+     */
+    public String literal(int i) {
+        int word = words[i] & 0xFF;
+        if (word != 0) {
+            return Interner.word(word);
+        }
+        return interner.intern(source, starts[i], starts[i] + lengths[i]);
+    }
+
+    /**
+     * Adds the literal of every token to the buffer's {@link Interner}, so
+     * from then on {@link #literal(int)} only reads it and the buffer can be
+     * read by several threads at once (see {@link ParallelParser}).
+     */
+    void internLiterals() {
+        for (int i = 0; i < size; i++) {
+            if (words[i] == 0) {
+                interner.intern(source, starts[i], starts[i] + lengths[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the value of a string literal token, its literal without the
+     * quotes and with escapes decoded. This reads the source directly, so the
+     * only copy is the value itself.
+     */
+    public String stringValue(int i) {
+        return Escapes.decode(source, starts[i] + 1, starts[i] + lengths[i] - 1);
+    }
+
+    /**
+     * Returns the value of a character literal token.
+     */
+    public char characterValue(int i) {
+        return Escapes.decodeCharacter(source, starts[i] + 1, starts[i] + lengths[i] - 1);
+    }
+
+    /**
+     * Returns true if the literal of the token is equal to the given string,
+     * without copying it out of the source.
+     */
+    public boolean literalEquals(int i, String literal) {
+        int word = words[i] & 0xFF;
+        if (word != 0) {
+            return Interner.word(word).equals(literal);
+        }
+        if (lengths[i] != literal.length()) {
+            return false;
+        }
+        int start = starts[i];
+        for (int k = 0; k < literal.length(); k++) {
+            if (source.charAt(start + k) != literal.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the token as a {@link Token}, copying its literal.
+     */
+    public Token get(int i) {
+        return new Token(type(i), literal(i), index(i));
+    }
+
+    /**
+     * Returns the number of bytes used by the arrays of this buffer, not
+     * counting the source.
+     */
+    public long bytes() {
+        long arrays = 16 + types.length + 16 + words.length + 16 + 4L * starts.length + 16 + 4L * lengths.length;
+        return indices == null ? arrays : arrays + 16 + 4L * indices.length;
+    }
+
+}
@@ -0,0 +1,117 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Checks that a {@link TokenBuffer} holds the same tokens as the list it
+ * replaces, and that the parser gives the same result from either.
+ */
+final class TokenBufferTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSameTokens(String test, String source) {
+        List<Token> tokens = new Lexer(source).lex();
+        TokenBuffer lexed = new Lexer(source).lexBuffer();
+        TokenBuffer of = TokenBuffer.of(tokens);
+        assertTokens(tokens, lexed);
+        assertTokens(tokens, of);
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testSameAst(String test, String source) {
+        List<Token> tokens = new Lexer(source).lex();
+        Ast.Source expected = new Parser(tokens).parseSource();
+        Assertions.assertEquals(expected, new Parser(new Lexer(source).lexBuffer()).parseSource());
+        Assertions.assertEquals(expected, new Parser(TokenBuffer.of(tokens)).parseSource());
+    }
+
+    private static Stream<Arguments> testSameAst() {
+        return testSameTokens();
+    }
+
+    private static Stream<Arguments> testSameTokens() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Every Node", ParserFixtures.EVERY_NODE),
+                Arguments.of("Escapes", "LET s: String = \"a\\tb\\\"c\\\\\";\nLET c: Character = '\\'';\nLET d: Character = '\\n';\n"),
+                Arguments.of("Keywords As Names", "DEF f() DO\n    LETTER = DOx + IFFY(ENDS);\n    obj.NIL_ = TRUE;\nEND\n"),
+                Arguments.of("Source", LexerBenchmark.source(64 * 1024))
+        );
+    }
+
+    /**
+     * Checks that an invalid source fails at the same index from a list and
+     * from either kind of buffer.
+     */
+    @ParameterizedTest
+    @MethodSource
+    void testSameErrors(String test, String source) {
+        List<Token> tokens = new Lexer(source).lex();
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseSource());
+        ParseException lexed = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(source).lexBuffer()).parseSource());
+        ParseException of = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(TokenBuffer.of(tokens)).parseSource());
+        Assertions.assertEquals(expected.getIndex(), lexed.getIndex());
+        Assertions.assertEquals(expected.getIndex(), of.getIndex());
+    }
+
+    private static Stream<Arguments> testSameErrors() {
+        return Stream.of(
+                Arguments.of("Missing Value", "LET x = ;"),
+                Arguments.of("Missing End", "DEF f() DO\n    RETURN 1;\n"),
+                Arguments.of("Missing Semicolon", "DEF f() DO\n    x = 1\nEND"),
+                Arguments.of("Trailing Tokens", "DEF f() DO END x y")
+        );
+    }
+
+    /**
+     * Checks a buffer of tokens which don't come from lexing one source,
+     * whose indices therefore differ from the offsets of their literals.
+     */
+    @Test
+    void testOf() {
+        List<Token> tokens = Arrays.asList(
+                new Token(Token.Type.IDENTIFIER, "RETURN", 100),
+                new Token(Token.Type.STRING, "\"a\\nb\"", 5),
+                new Token(Token.Type.CHARACTER, "'\\t'", 7),
+                new Token(Token.Type.OPERATOR, "<=", 7),
+                new Token(Token.Type.IDENTIFIER, "x", 0));
+        TokenBuffer buffer = TokenBuffer.of(tokens);
+        assertTokens(tokens, buffer);
+        Assertions.assertEquals("a\nb", buffer.stringValue(1));
+        Assertions.assertEquals('\t', buffer.characterValue(2));
+    }
+
+    private static void assertTokens(List<Token> expected, TokenBuffer actual) {
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Token token = expected.get(i);
+            Assertions.assertEquals(token.getType(), actual.type(i));
+            Assertions.assertEquals(token.getLiteral(), actual.literal(i));
+            Assertions.assertEquals(token.getIndex(), actual.index(i));
+            Assertions.assertEquals(token.getLiteral().length(), actual.length(i));
+            Assertions.assertEquals(token, actual.get(i));
+            Assertions.assertTrue(actual.literalEquals(i, token.getLiteral()));
+            Assertions.assertFalse(actual.literalEquals(i, token.getLiteral() + " "));
+            if (token.getType() == Token.Type.STRING) {
+                Assertions.assertEquals(Escapes.decode(token.getLiteral(), 1, token.getLiteral().length() - 1),
+                        actual.stringValue(i));
+            } else if (token.getType() == Token.Type.CHARACTER) {
+                Assertions.assertEquals(Escapes.decodeCharacter(token.getLiteral(), 1, token.getLiteral().length() - 1),
+                        actual.characterValue(i));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+package plc.project;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An on-disk cache of lexed sources, so unchanged files don't have to be
+ * lexed again on every build.
+ *
+ * Entries are keyed by the SHA-256 hash of the source, so an edited source
+ * simply misses and there is nothing to invalidate when files change; {@link
+ * #invalidate(CharSequence)} and {@link #clear()} remove entries explicitly.
+ * On a hit the entry is memory mapped and decoded straight into a {@link
+ * TokenBuffer} for the {@link Parser}, without lexing.
+ *
+ * An entry is a header ({@link #MAGIC} and {@link #VERSION}) followed by a
+ * pool of the distinct literals and then the tokens, all as unsigned varints.
+ * The pool is the number of literals and each literal as its length and
+ * chars. Each token is one varint holding its type (in the low 3 bits) and the
+ * number of characters between the end of the previous token and its start,
+ * followed by the number of its literal in the pool. Entries with the wrong
+ * header or which are truncated or otherwise invalid are treated as a miss
+ * and rewritten.
+ */
+public final class TokenCache {
+
+    private static final int MAGIC = 0x504C4354; // "PLCT"
+    private static final int VERSION = 1;
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private final CacheDirectory directory;
+    private long bytesSaved = 0;
+
+    /**
+     * Creates a cache storing entries in the given directory, which is
+     * created if needed.
+     */
+    public TokenCache(Path directory) throws IOException {
+        this.directory = new CacheDirectory(directory, ".tokens");
+    }
+
+    /**
+     * Returns the tokens of the source, from the cache if it has been lexed
+     * before and otherwise by lexing it and adding it to the cache. Throws a
+     * {@link ParseException} (and caches nothing) if the source doesn't lex.
+     */
+    public TokenBuffer lex(CharSequence source) throws IOException {
+        Path entry = directory.entry(source);
+        TokenBuffer tokens = read(entry);
+        if (tokens != null) {
+            directory.hit();
+            bytesSaved += source.length();
+            return tokens;
+        }
+        directory.miss();
+        tokens = new Lexer(source).lexBuffer();
+        directory.write(entry, encode(tokens));
+        return tokens;
+    }
+
+    /**
+     * Removes the entry for the source, if there is one.
+     */
+    public void invalidate(CharSequence source) throws IOException {
+        directory.invalidate(source);
+    }
+
+    /**
+     * Removes every entry from the cache.
+     */
+    public void clear() throws IOException {
+        directory.clear();
+    }
+
+    public long getHits() {
+        return directory.getHits();
+    }
+
+    public long getMisses() {
+        return directory.getMisses();
+    }
+
+    /**
+     * Returns the fraction of calls to {@link #lex(CharSequence)} served from
+     * the cache, or 0 if there have been none.
+     */
+    public double getHitRate() {
+        return directory.getHitRate();
+    }
+
+    /**
+     * Returns the number of source characters which did not have to be lexed
+     * because they were served from the cache.
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    private static TokenBuffer read(Path entry) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            return decode(buffer);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null; // a truncated or corrupt entry, which is rewritten
+        }
+    }
+
+    /**
+     * Returns the serialized form of the tokens.
+     */
+    static byte[] encode(TokenBuffer tokens) {
+        Map<String, Integer> numbers = new HashMap<>();
+        int[] literals = new int[tokens.size()];
+        CacheDirectory.Output pool = new CacheDirectory.Output();
+        for (int i = 0; i < tokens.size(); i++) {
+            String literal = tokens.literal(i);
+            Integer number = numbers.get(literal);
+            if (number == null) {
+                number = numbers.size();
+                numbers.put(literal, number);
+                pool.varint(literal.length());
+                for (int k = 0; k < literal.length(); k++) {
+                    pool.varint(literal.charAt(k));
+                }
+            }
+            literals[i] = number;
+        }
+        CacheDirectory.Output output = new CacheDirectory.Output();
+        output.varint(MAGIC);
+        output.varint(VERSION);
+        output.varint(numbers.size());
+        output.bytes(pool);
+        output.varint(tokens.size());
+        int end = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            output.varint(tokens.type(i).ordinal() | (tokens.index(i) - end) << 3);
+            output.varint(literals[i]);
+            end = tokens.index(i) + tokens.length(i);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Returns the tokens serialized in the buffer, throwing an {@link
+     * IllegalArgumentException} (or a {@link BufferUnderflowException} if it
+     * is truncated) if it is not a valid entry.
+     */
+    static TokenBuffer decode(ByteBuffer buffer) {
+        if (CacheDirectory.varint(buffer) != MAGIC || CacheDirectory.varint(buffer) != VERSION) {
+            throw new IllegalArgumentException("Not a token cache entry.");
+        }
+        int literals = CacheDirectory.count(buffer);
+        int[] starts = new int[literals];
+        int[] lengths = new int[literals];
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < literals; i++) {
+            starts[i] = source.length();
+            lengths[i] = CacheDirectory.count(buffer);
+            for (int k = 0; k < lengths[i]; k++) {
+                source.append((char) CacheDirectory.varint(buffer));
+            }
+        }
+        TokenBuffer tokens = TokenBuffer.indexed(source);
+        int size = CacheDirectory.count(buffer);
+        int end = 0;
+        for (int i = 0; i < size; i++) {
+            int header = CacheDirectory.varint(buffer);
+            int type = header & 7;
+            int index = end + (header >>> 3);
+            int literal = CacheDirectory.varint(buffer);
+            if (type >= TYPES.length || literal < 0 || literal >= literals || index < end) {
+                throw new IllegalArgumentException("Invalid token " + i + ".");
+            }
+            tokens.add(TYPES[type], starts[literal], lengths[literal], index);
+            end = index + lengths[literal];
+        }
+        return tokens;
+    }
+
+}
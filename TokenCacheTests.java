@@ -0,0 +1,114 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Checks that a {@link TokenCache} gives back the tokens it stored, and
+ * treats anything else as a miss.
+ */
+final class TokenCacheTests {
+
+    /**
+     * Checks that a {@link TokenCache} gives back the same tokens as lexing
+     * on a miss and on a hit, and lexes again once the entry is removed.
+     */
+    @Test
+    void testTokenCache() throws IOException {
+        String source = ParserFixtures.EVERY_NODE;
+        TokenBuffer expected = new Lexer(source).lexBuffer();
+        Path directory = Files.createTempDirectory("tokens");
+        try {
+            TokenCache cache = new TokenCache(directory);
+            assertTokens(expected, cache.lex(source));
+            assertTokens(expected, cache.lex(source));
+            Assertions.assertEquals(1L, cache.getHits());
+            Assertions.assertEquals(1L, cache.getMisses());
+            Assertions.assertEquals((long) source.length(), cache.getBytesSaved());
+            Assertions.assertEquals(0.5, cache.getHitRate());
+            Assertions.assertThrows(ParseException.class, () -> cache.lex("\"unterminated"));
+            Assertions.assertEquals(1L, entries(directory));
+            cache.invalidate(source);
+            Assertions.assertEquals(0L, entries(directory));
+            assertTokens(expected, cache.lex(source));
+            Assertions.assertEquals(3L, cache.getMisses());
+            cache.lex("LET x = 1;");
+            Assertions.assertEquals(2L, entries(directory));
+            cache.clear();
+            Assertions.assertEquals(0L, entries(directory));
+            assertTokens(expected, cache.lex(source));
+            Assertions.assertEquals(5L, cache.getMisses());
+            cache.clear();
+        } finally {
+            Files.delete(directory);
+        }
+        String large = LexerBenchmark.source(64 * 1024);
+        TokenBuffer tokens = new Lexer(large).lexBuffer();
+        assertTokens(tokens, TokenCache.decode(ByteBuffer.wrap(TokenCache.encode(tokens))));
+        TokenBuffer empty = new Lexer("").lexBuffer();
+        assertTokens(empty, TokenCache.decode(ByteBuffer.wrap(TokenCache.encode(empty))));
+    }
+
+    /**
+     * Checks that an entry which is truncated, has any one bit flipped, or
+     * has any varint replaced by a negative one, is a miss or decodes to some
+     * tokens, and never fails with an exception the cache doesn't expect.
+     */
+    @Test
+    void testCorruptEntries() throws IOException {
+        String source = ParserFixtures.EVERY_NODE;
+        TokenBuffer expected = new Lexer(source).lexBuffer();
+        Path directory = Files.createTempDirectory("tokens");
+        try {
+            TokenCache cache = new TokenCache(directory);
+            cache.lex(source);
+            Path entry;
+            try (Stream<Path> entries = Files.list(directory)) {
+                entry = entries.findFirst().get();
+            }
+            byte[] bytes = Files.readAllBytes(entry);
+            for (int i = 0; i < bytes.length; i++) {
+                Files.write(entry, Arrays.copyOf(bytes, i));
+                assertTokens(expected, cache.lex(source));
+                Assertions.assertArrayEquals(bytes, Files.readAllBytes(entry));
+                for (int bit = 0; bit < 8; bit++) {
+                    byte[] corrupt = bytes.clone();
+                    corrupt[i] ^= 1 << bit;
+                    Files.write(entry, corrupt);
+                    Assertions.assertNotNull(cache.lex(source));
+                }
+                byte[] corrupt = Arrays.copyOf(bytes, Math.max(bytes.length, i + 5));
+                System.arraycopy(new byte[] {-1, -1, -1, -1, 0x0F}, 0, corrupt, i, 5); // -1
+                Files.write(entry, corrupt);
+                Assertions.assertNotNull(cache.lex(source));
+            }
+            Assertions.assertEquals(10L * bytes.length + 1, cache.getHits() + cache.getMisses());
+            cache.clear();
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    private static long entries(Path directory) throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries.count();
+        }
+    }
+
+    private static void assertTokens(TokenBuffer expected, TokenBuffer actual) {
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertEquals(expected.type(i), actual.type(i));
+            Assertions.assertEquals(expected.literal(i), actual.literal(i));
+            Assertions.assertEquals(expected.index(i), actual.index(i));
+        }
+    }
+
+}